@@ -0,0 +1,253 @@
+/*
+ * Copyright 2016 - Per Wendel
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spark.http.matching;
+
+import java.lang.reflect.Proxy;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import spark.FilterImpl;
+import spark.Request;
+import spark.Response;
+import spark.RouteImpl;
+import spark.route.HttpMethod;
+import spark.route.Routes;
+import spark.staticfiles.StaticFilesConfiguration;
+
+/**
+ * Benchmarks a whole exchange through the {@link MatcherFilter}: matching, before filters, the route, after
+ * filters and writing the body, against servlet request and response stubs that allocate nothing themselves.
+ * Run with the GC profiler, as the benchmarks profile does, it reports the bytes allocated per request.
+ *
+ * @author Per Wendel
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MatcherFilterBenchmark {
+
+    @Param({"0", "1", "4"})
+    int beforeFilters;
+
+    private MatcherFilter filter;
+    private StubRequest request;
+    private StubResponse response;
+
+    @Setup
+    public void setup() {
+        Routes routes = Routes.create();
+        routes.batch(r -> {
+            for (int i = 0; i < beforeFilters; i++) {
+                String path = i % 2 == 0 ? "/*" : "/users/*";
+                r.add(HttpMethod.before, path, "*/*", new FilterImpl(path, "*/*") {
+                    @Override
+                    public void handle(Request request, Response response) {
+                        request.attribute("checked");
+                    }
+                });
+            }
+            r.add(HttpMethod.get, "/users/:name", "*/*", new RouteImpl("/users/:name", "*/*") {
+                @Override
+                public Object handle(Request request, Response response) {
+                    return request.params(":name");
+                }
+            });
+            r.add(HttpMethod.after, "/*", "*/*", new FilterImpl("/*", "*/*") {
+                @Override
+                public void handle(Request request, Response response) {
+                    response.type("text/plain");
+                }
+            });
+        });
+
+        filter = new MatcherFilter(routes, StaticFilesConfiguration.create(), false, false);
+        request = new StubRequest("GET", "/users/bob");
+        response = new StubResponse();
+    }
+
+    @Benchmark
+    public int exchange() throws Exception {
+        response.clear();
+        filter.doFilter(request, response, null);
+        return response.getStatus();
+    }
+
+    private static <T> T unsupported(Class<T> type) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type}, (proxy, method, args) -> {
+            throw new UnsupportedOperationException(method.getName());
+        }));
+    }
+
+    private static final class StubRequest extends HttpServletRequestWrapper {
+
+        private final String method;
+        private final String uri;
+
+        StubRequest(String method, String uri) {
+            super(unsupported(HttpServletRequest.class));
+            this.method = method;
+            this.uri = uri;
+        }
+
+        @Override
+        public String getMethod() {
+            return method;
+        }
+
+        @Override
+        public String getRequestURI() {
+            return uri;
+        }
+
+        @Override
+        public String getPathInfo() {
+            return uri;
+        }
+
+        @Override
+        public String getHeader(String name) {
+            return null;
+        }
+
+        @Override
+        public Enumeration<String> getHeaders(String name) {
+            return Collections.emptyEnumeration();
+        }
+
+        @Override
+        public Object getAttribute(String name) {
+            return null;
+        }
+
+        @Override
+        public boolean isAsyncSupported() {
+            return false;
+        }
+
+        @Override
+        public boolean isAsyncStarted() {
+            return false;
+        }
+    }
+
+    private static final class StubResponse extends HttpServletResponseWrapper {
+
+        private static final ServletOutputStream DISCARD = new ServletOutputStream() {
+            @Override
+            public void write(int b) {
+                //
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                //
+            }
+
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setWriteListener(WriteListener writeListener) {
+                //
+            }
+        };
+
+        private int status;
+        private String contentType;
+
+        StubResponse() {
+            super(unsupported(HttpServletResponse.class));
+        }
+
+        void clear() {
+            status = SC_OK;
+            contentType = null;
+        }
+
+        @Override
+        public int getStatus() {
+            return status;
+        }
+
+        @Override
+        public void setStatus(int status) {
+            this.status = status;
+        }
+
+        @Override
+        public String getContentType() {
+            return contentType;
+        }
+
+        @Override
+        public void setContentType(String type) {
+            this.contentType = type;
+        }
+
+        @Override
+        public void setHeader(String name, String value) {
+            //
+        }
+
+        @Override
+        public void addHeader(String name, String value) {
+            //
+        }
+
+        @Override
+        public Collection<String> getHeaders(String name) {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public boolean isCommitted() {
+            return false;
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() {
+            return DISCARD;
+        }
+    }
+
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2016 - Per Wendel
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spark.route;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks matching a single route entry against requested paths, with literal, param and wildcard patterns.
+ *
+ * @author Per Wendel
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RouteEntryBenchmark {
+
+    private static final String[] PATHS = {
+            "/users/list", "/users/bob/posts", "/users/bob/posts/", "/users/a/b/c", "/items/42", "/users"
+    };
+
+    @Param({"/users/list", "/users/:name/posts", "/users/*"})
+    String pattern;
+
+    private RouteEntry entry;
+    private int next;
+
+    @Setup
+    public void setup() {
+        entry = new RouteEntry();
+        entry.httpMethod = HttpMethod.get;
+        entry.path = pattern;
+        entry.acceptedType = "*/*";
+    }
+
+    @Benchmark
+    public boolean matches() {
+        next = (next + 1) % PATHS.length;
+        return entry.matches(HttpMethod.get, PATHS[next]);
+    }
+
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2016 - Per Wendel
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spark.route;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import spark.routematch.RouteMatch;
+
+/**
+ * Benchmarks route lookups on synthetic route tables. Every tenant maps a literal, a param, a constrained param
+ * and a wildcard route, half of them for JSON and half for HTML, plus before filters.
+ * The requested paths hit each kind of route and miss now and then.
+ *
+ * @author Per Wendel
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RoutesBenchmark {
+
+    static final String[] ACCEPT_HEADERS = {
+            "text/html,application/xhtml+xml,application/xml;q=0.9,image/webp,*/*;q=0.8",
+            "application/json",
+            "application/json, text/plain, */*",
+            "*/*"
+    };
+
+    private static final int ROUTES_PER_TENANT = 5;
+    private static final int REQUESTS = 1024;
+
+    @Param({"10", "1000", "10000"})
+    int routeCount;
+
+    private Routes routes;
+    private String[] paths;
+    private String[] acceptHeaders;
+    private int next;
+
+    @Setup
+    public void setup() {
+        int tenants = Math.max(1, routeCount / ROUTES_PER_TENANT);
+
+        routes = Routes.create();
+        routes.batch(r -> {
+            for (int tenant = 0; tenant < tenants; tenant++) {
+                String prefix = "/tenant" + tenant;
+                String acceptType = tenant % 2 == 0 ? "application/json" : "text/html";
+
+                r.add("before'" + prefix + "/*'", "*/*", "auth" + tenant);
+                r.add("get'" + prefix + "/users'", acceptType, "users" + tenant);
+                r.add("get'" + prefix + "/users/:name'", acceptType, "user" + tenant);
+                r.add("get'" + prefix + "/items/:id{int}'", acceptType, "item" + tenant);
+                r.add("get'" + prefix + "/files/*'", "*/*", "files" + tenant);
+            }
+        });
+
+        String[] suffixes = {"/users", "/users/bob", "/items/42", "/files/a/b/c.txt", "/missing"};
+
+        paths = new String[REQUESTS];
+        acceptHeaders = new String[REQUESTS];
+
+        for (int i = 0; i < REQUESTS; i++) {
+            // Spread over the tenants with a stride so that consecutive requests don't hit the same tenant
+            int tenant = (int) ((i * 7919L) % tenants);
+            paths[i] = "/tenant" + tenant + suffixes[i % suffixes.length];
+            acceptHeaders[i] = ACCEPT_HEADERS[i % ACCEPT_HEADERS.length];
+        }
+    }
+
+    @Benchmark
+    public RouteMatch find() {
+        int i = nextRequest();
+        return routes.find(HttpMethod.get, paths[i], acceptHeaders[i]);
+    }
+
+    @Benchmark
+    public List<RouteMatch> findMultiple() {
+        int i = nextRequest();
+        return routes.findMultiple(HttpMethod.before, paths[i], acceptHeaders[i]);
+    }
+
+    private int nextRequest() {
+        next = (next + 1) & (REQUESTS - 1);
+        return next;
+    }
+
+}
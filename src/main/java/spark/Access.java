@@ -31,4 +31,12 @@ public final class Access {
         request.changeMatch(match);
     }
 
+    public static void routeReturned(Request request, boolean resumedLater) {
+        request.routeReturned(resumedLater);
+    }
+
+    public static Records records(Object element, RouteImpl route, Response response) {
+        return Records.from(element, route, response);
+    }
+
 }
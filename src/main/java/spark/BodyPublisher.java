@@ -0,0 +1,51 @@
+/*
+ * Copyright 2016 - Per Wendel
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spark;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * A body produced asynchronously, chunk by chunk. Return one from a route to stream from a data source without
+ * holding a thread: the next chunk is only asked for when the client connection can take more, so a slow client
+ * slows down the source instead of filling memory. Adapting a reactive streams publisher means requesting one item
+ * per call to {@link #next()}.
+ * <p>
+ * The body is written with non-blocking IO after the after filters have run, and gzip compressed when the response
+ * asks for it with a Content-Encoding header and the client accepts it. In a container that doesn't allow async
+ * processing it is written with blocking IO instead.
+ *
+ * @author Per Wendel
+ */
+@FunctionalInterface
+public interface BodyPublisher {
+
+    /**
+     * Asks for the next chunk of the body. Not called again before the returned stage completes.
+     *
+     * @return a stage completing with the next chunk, or with null once the whole body has been produced
+     */
+    CompletionStage<ByteBuffer> next();
+
+    /**
+     * Called if the body won't be asked for more chunks because the client is gone or writing failed.
+     */
+    default void cancel() {
+        // nothing to release
+    }
+
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2016 - Per Wendel
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spark;
+
+/**
+ * Base class for exceptions used to leave a route or filter early, such as {@link HaltException}, rather than
+ * to report an error. These are thrown a lot, on ordinary requests, and only their type and state are read by
+ * the exception handler mapped for them, so they don't record a stack trace nor suppressed exceptions. Extend it
+ * for exceptions mapped with {@link Service#exception(Class, ExceptionHandler)} that are part of the normal
+ * request flow.
+ *
+ * @author Per Wendel
+ */
+public abstract class ControlFlowException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    protected ControlFlowException() {
+        this(null);
+    }
+
+    protected ControlFlowException(String message) {
+        super(message, null, false, false);
+    }
+
+}
@@ -16,62 +16,267 @@
  */
 package spark;
 
-import java.util.HashMap;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
- * Holds the customer error pages.
+ * Holds the customer error pages, for any status code. Pages given as strings are encoded once when they are
+ * mapped, and the default pages once per status code, so error responses are written without encoding anything.
+ * Pages rendered by a route can be cached after they have been rendered once.
  */
 public class CustomErrorPages {
 
     public static final String NOT_FOUND = "<html><body><h2>404 Not found</h2></body></html>";
+    public static final String METHOD_NOT_ALLOWED = "<html><body><h2>405 Method Not Allowed</h2></body></html>";
     public static final String INTERNAL_ERROR = "<html><body><h2>500 Internal Error</h2></body></html>";
+    public static final String PAYLOAD_TOO_LARGE = "<html><body><h2>413 Payload Too Large</h2></body></html>";
+    public static final String SERVICE_UNAVAILABLE = "<html><body><h2>503 Service Unavailable</h2></body></html>";
 
+    private static final String HTML_CONTENT_TYPE = "text/html; charset=utf-8";
+
+    // The default pages by status code, created on first use, racing writes create equal pages
+    private static final EncodedPage[] DEFAULT_PAGES = new EncodedPage[600];
+
+    /**
+     * @param status the status code
+     * @return true if a page is mapped for the status code on the shared error pages
+     * @deprecated Each Service maps its error pages on error pages of its own, which this doesn't see. Map them with
+     * {@link Service#errorPage(int, String)} and read them with {@link #has(int)} on
+     * {@link spark.routematch.RoutePipeline#getErrorPages()} instead.
+     */
+    @Deprecated
     public static boolean existsFor(int status) {
-        return CustomErrorPages.getInstance().customPages.containsKey(status);
+        return getInstance().has(status);
     }
 
+    /**
+     * @param status   the status code
+     * @param request  the request
+     * @param response the response
+     * @return the page of the shared error pages for the status code
+     * @deprecated Each Service maps its error pages on error pages of its own, which this doesn't see. Map them with
+     * {@link Service#errorPage(int, String)} and read them with {@link #pageFor(int, Request, Response)} on
+     * {@link spark.routematch.RoutePipeline#getErrorPages()} instead.
+     */
+    @Deprecated
     public static Object getFor(int status, Request request, Response response) {
+        return getInstance().pageFor(status, request, response);
+    }
+
+    private static CustomErrorPages getInstance() {
+        return SingletonHolder.INSTANCE;
+    }
 
-        Object customRenderer = CustomErrorPages.getInstance().customPages.get(status);
-        Object customPage;
+    /**
+     * @param status the status code
+     * @return the default page for the status code
+     */
+    public static String defaultPageFor(int status) {
+        switch (status) {
+            case 404:
+                return NOT_FOUND;
+            case 405:
+                return METHOD_NOT_ALLOWED;
+            case 413:
+                return PAYLOAD_TOO_LARGE;
+            case 500:
+                return INTERNAL_ERROR;
+            case 503:
+                return SERVICE_UNAVAILABLE;
+            default:
+                String reason = reasonPhrase(status);
+                return "<html><body><h2>" + status + (reason != null ? " " + reason : "") + "</h2></body></html>";
+        }
+    }
 
-        customPage = status == 404 ? NOT_FOUND : INTERNAL_ERROR;
+    /**
+     * @param status the status code
+     * @return the default page for the status code, encoded
+     */
+    public static EncodedPage defaultEncodedPageFor(int status) {
+        if (status < 0 || status >= DEFAULT_PAGES.length) {
+            return new EncodedPage(defaultPageFor(status), HTML_CONTENT_TYPE);
+        }
+        EncodedPage page = DEFAULT_PAGES[status];
+        if (page == null) {
+            page = new EncodedPage(defaultPageFor(status), HTML_CONTENT_TYPE);
+            DEFAULT_PAGES[status] = page;
+        }
+        return page;
+    }
 
-        if (customRenderer instanceof String) {
-            customPage = customRenderer;
-        } else if (customRenderer instanceof Route) {
+    /**
+     * @param status the status code
+     * @return true if a page is mapped for the status code
+     */
+    public boolean has(int status) {
+        return customPages.containsKey(status);
+    }
+
+    /**
+     * Gets the page for a status code if it doesn't have to be rendered, so no request nor response has to be
+     * created for it
+     *
+     * @param status the status code
+     * @return the mapped page, the cached rendering of a route or the default page, null if a route has to render
+     * the page
+     */
+    public EncodedPage encodedPageFor(int status) {
+        Object page = customPages.get(status);
+        if (page == null) {
+            return defaultEncodedPageFor(status);
+        }
+        return page instanceof EncodedPage ? (EncodedPage) page : null;
+    }
+
+    /**
+     * Gets the page for a status code, the default page if none is mapped or the route rendering it fails
+     *
+     * @param status   the status code
+     * @param request  the request
+     * @param response the response
+     * @return the page
+     */
+    public Object pageFor(int status, Request request, Response response) {
+
+        Object customPage = customPages.get(status);
+
+        if (customPage instanceof RoutePage) {
+            RoutePage routePage = (RoutePage) customPage;
             try {
-                customPage = ((Route) customRenderer).handle(request, response);
+                Object rendered = routePage.route.handle(request, response);
+
+                if (routePage.cache && rendered instanceof String) {
+                    // Replaced only if the route hasn't been mapped again in the meantime
+                    EncodedPage page = new EncodedPage((String) rendered, response.raw().getContentType());
+                    customPages.replace(status, routePage, page);
+                    return page;
+                }
+                return rendered;
             } catch (Exception e) {
-                // customPage is already set to default error so nothing needed here
+                return defaultEncodedPageFor(status);
             }
         }
 
-        return customPage;
+        return customPage != null ? customPage : defaultEncodedPageFor(status);
     }
 
-    static void add(int status, String page) {
-        CustomErrorPages.getInstance().customPages.put(status, page);
+    void put(int status, String page) {
+        customPages.put(status, new EncodedPage(page, null));
     }
 
-    static void add(int status, Route route) {
-        CustomErrorPages.getInstance().customPages.put(status, route);
+    void put(int status, Route route, boolean cache) {
+        customPages.put(status, new RoutePage(route, cache));
+    }
+
+    private static String reasonPhrase(int status) {
+        switch (status) {
+            case 400:
+                return "Bad Request";
+            case 401:
+                return "Unauthorized";
+            case 403:
+                return "Forbidden";
+            case 406:
+                return "Not Acceptable";
+            case 408:
+                return "Request Timeout";
+            case 409:
+                return "Conflict";
+            case 410:
+                return "Gone";
+            case 415:
+                return "Unsupported Media Type";
+            case 422:
+                return "Unprocessable Entity";
+            case 429:
+                return "Too Many Requests";
+            case 501:
+                return "Not Implemented";
+            case 502:
+                return "Bad Gateway";
+            case 504:
+                return "Gateway Timeout";
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * A page encoded in UTF-8, with its content type if it must be set
+     */
+    public static final class EncodedPage {
+
+        private final String page;
+        private final byte[] bytes;
+        private final String contentType;
+
+        EncodedPage(String page, String contentType) {
+            this.page = page;
+            this.bytes = page.getBytes(StandardCharsets.UTF_8);
+            this.contentType = contentType;
+        }
+
+        /**
+         * @return the content type set when the page was rendered, or null to use the default one
+         */
+        public String contentType() {
+            return contentType;
+        }
+
+        /**
+         * @return the number of bytes written
+         */
+        public int length() {
+            return bytes.length;
+        }
+
+        /**
+         * Writes the page
+         *
+         * @param out the stream
+         * @throws IOException in case of IO error
+         */
+        public void writeTo(OutputStream out) throws IOException {
+            out.write(bytes);
+        }
+
+        @Override
+        public String toString() {
+            return page;
+        }
+    }
+
+    /**
+     * A page rendered by a route
+     */
+    private static final class RoutePage {
+
+        private final Route route;
+        private final boolean cache;
+
+        RoutePage(Route route, boolean cache) {
+            this.route = route;
+            this.cache = cache;
+        }
     }
 
     // Private stuff
 
-    private final HashMap<Integer, Object> customPages;
+    private final Map<Integer, Object> customPages;
 
-    private CustomErrorPages() {
-        customPages = new HashMap<>();
+    /**
+     * Class constructor
+     */
+    public CustomErrorPages() {
+        customPages = new ConcurrentHashMap<>();
     }
 
     private static class SingletonHolder {
         private static final CustomErrorPages INSTANCE = new CustomErrorPages();
     }
 
-    private static CustomErrorPages getInstance() {
-        return SingletonHolder.INSTANCE;
-    }
-
 }
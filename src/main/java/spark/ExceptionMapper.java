@@ -16,9 +16,16 @@
  */
 package spark;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
+/**
+ * Maps exception classes to their handlers. Each Service has its own mapper, which is read by every request that
+ * throws an exception and written only when handlers are mapped. The mapped handlers are an immutable snapshot
+ * replaced on each mapping, and the handler resolved for an exception class, possibly through a superclass, is
+ * cached in a {@link ClassValue} belonging to the snapshot. Lookups never lock nor write to a shared map.
+ */
 public class ExceptionMapper {
     /**
      * Holds a default instance for the exception mapper
@@ -26,10 +33,15 @@ public class ExceptionMapper {
     private static ExceptionMapper defaultInstance;
 
     /**
-     * Returns the default instance for the exception mapper
+     * Returns the default instance for the exception mapper. Services don't use it, they map exceptions in their
+     * own mapper.
      *
      * @return Default instance
+     * @deprecated Each Service maps its exception handlers in a mapper of its own, which this isn't. Map them with
+     * {@link Service#exception(Class, ExceptionHandler)} and look them up with {@link #getHandler(Exception)} on
+     * {@link spark.routematch.RoutePipeline#getExceptionMapper()} instead.
      */
+    @Deprecated
     public synchronized static ExceptionMapper getInstance() {
         if (defaultInstance == null) {
             defaultInstance = new ExceptionMapper();
@@ -38,15 +50,15 @@ public class ExceptionMapper {
     }
 
     /**
-     * Holds a map of Exception classes and associated handlers
+     * Holds the mapped handlers and the handlers resolved from them
      */
-    private Map<Class<? extends Exception>, ExceptionHandlerImpl> exceptionMap;
+    private volatile Resolution resolution;
 
     /**
      * Class constructor
      */
     public ExceptionMapper() {
-        this.exceptionMap = new HashMap<>();
+        this.resolution = new Resolution(Collections.emptyMap());
     }
 
     /**
@@ -56,8 +68,10 @@ public class ExceptionMapper {
      * @param exceptionClass Type of exception
      * @param handler        Handler to map to exception
      */
-    public void map(Class<? extends Exception> exceptionClass, ExceptionHandlerImpl handler) {
-        this.exceptionMap.put(exceptionClass, handler);
+    public synchronized void map(Class<? extends Exception> exceptionClass, ExceptionHandlerImpl handler) {
+        Map<Class<?>, ExceptionHandlerImpl> exceptionMap = new HashMap<>(resolution.exceptionMap);
+        exceptionMap.put(exceptionClass, handler);
+        this.resolution = new Resolution(exceptionMap);
     }
 
     /**
@@ -67,33 +81,7 @@ public class ExceptionMapper {
      * @return Associated handler
      */
     public ExceptionHandlerImpl getHandler(Class<? extends Exception> exceptionClass) {
-        // If the exception map does not contain the provided exception class, it might
-        // still be that a superclass of the exception class is.
-        if (!this.exceptionMap.containsKey(exceptionClass)) {
-
-            Class<?> superclass = exceptionClass.getSuperclass();
-            do {
-                // Is the superclass mapped?
-                if (this.exceptionMap.containsKey(superclass)) {
-                    // Use the handler for the mapped superclass, and cache handler
-                    // for this exception class
-                    ExceptionHandlerImpl handler = this.exceptionMap.get(superclass);
-                    this.exceptionMap.put(exceptionClass, handler);
-                    return handler;
-                }
-
-                // Iteratively walk through the exception class's superclasses
-                superclass = superclass.getSuperclass();
-            } while (superclass != null);
-
-            // No handler found either for the superclasses of the exception class
-            // We cache the null value to prevent future
-            this.exceptionMap.put(exceptionClass, null);
-            return null;
-        }
-
-        // Direct map
-        return this.exceptionMap.get(exceptionClass);
+        return resolution.get(exceptionClass).handler;
     }
 
     /**
@@ -105,4 +93,45 @@ public class ExceptionMapper {
     public ExceptionHandlerImpl getHandler(Exception exception) {
         return this.getHandler(exception.getClass());
     }
+
+    /**
+     * The handler resolved for an exception class, null if there is none. ClassValue can't hold null.
+     */
+    private static final class Resolved {
+
+        private static final Resolved NONE = new Resolved(null);
+
+        private final ExceptionHandlerImpl handler;
+
+        private Resolved(ExceptionHandlerImpl handler) {
+            this.handler = handler;
+        }
+    }
+
+    /**
+     * Resolves the handlers of exception classes from a snapshot of the mapped handlers, the first time each class
+     * is looked up
+     */
+    private static final class Resolution extends ClassValue<Resolved> {
+
+        private final Map<Class<?>, ExceptionHandlerImpl> exceptionMap;
+
+        private Resolution(Map<Class<?>, ExceptionHandlerImpl> exceptionMap) {
+            this.exceptionMap = exceptionMap;
+        }
+
+        @Override
+        protected Resolved computeValue(Class<?> exceptionClass) {
+            // If the exception class isn't mapped, a superclass of it might be
+            Class<?> mapped = exceptionClass;
+            do {
+                if (exceptionMap.containsKey(mapped)) {
+                    return new Resolved(exceptionMap.get(mapped));
+                }
+                mapped = mapped.getSuperclass();
+            } while (mapped != null);
+
+            return Resolved.NONE;
+        }
+    }
 }
@@ -19,26 +19,30 @@ package spark;
 import javax.servlet.http.HttpServletResponse;
 
 /**
- * Exception used for stopping the execution
+ * Exception used for stopping the execution. It has no stack trace, and halting with a status code only throws a
+ * shared instance per status code. It has no cause either, so that the shared instances can't be changed.
  *
  * @author Per Wendel
  */
-public class HaltException extends RuntimeException {
+public class HaltException extends ControlFlowException {
     private static final long serialVersionUID = 1L;
 
-    private int statusCode = HttpServletResponse.SC_OK;
-    private String body = null;
+    // The shared instances of status codes without a body, racing writes create equal instances
+    private static final HaltException[] SHARED = new HaltException[600];
+
+    private final int statusCode;
+    private final String body;
 
     HaltException() {
-        super();
+        this(HttpServletResponse.SC_OK, null);
     }
 
     HaltException(int statusCode) {
-        this.statusCode = statusCode;
+        this(statusCode, null);
     }
 
     HaltException(String body) {
-        this.body = body;
+        this(HttpServletResponse.SC_OK, body);
     }
 
     HaltException(int statusCode, String body) {
@@ -46,6 +50,32 @@ public class HaltException extends RuntimeException {
         this.body = body;
     }
 
+    /**
+     * @param statusCode the status code
+     * @return the shared exception for the status code without a body
+     */
+    static HaltException of(int statusCode) {
+        if (statusCode < 0 || statusCode >= SHARED.length) {
+            return new HaltException(statusCode);
+        }
+        HaltException shared = SHARED[statusCode];
+        if (shared == null) {
+            shared = new HaltException(statusCode);
+            SHARED[statusCode] = shared;
+        }
+        return shared;
+    }
+
+    /**
+     * Not supported, a halt has no cause and the instances of a status code are shared.
+     *
+     * @throws IllegalStateException always
+     */
+    @Override
+    public synchronized Throwable initCause(Throwable cause) {
+        throw new IllegalStateException("A halt has no cause");
+    }
+
     /**
      * @return the statusCode
      * @deprecated replaced by {@link #statusCode()}
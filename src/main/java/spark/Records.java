@@ -0,0 +1,207 @@
+/*
+ * Copyright 2016 - Per Wendel
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spark;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+/**
+ * A body of records written one at a time as they are pulled from a stream or an iterator, e.g. rows of a database
+ * scan. Each record is rendered with the route's response transformer, or with toString if it has none.
+ * <p>
+ * A route can return a {@link Stream} or an {@link Iterator} directly, it is written as newline delimited JSON.
+ * To write another format wrap it:
+ * <pre>
+ * get("/users", (request, response) -&gt; Records.of(users()).asJsonArray(), json);
+ * get("/users.csv", (request, response) -&gt; Records.of(rows()).format("id,name\n", "\n", "\n").contentType("text/csv"));
+ * </pre>
+ * The stream is closed once written, also when the client is gone.
+ *
+ * @author Per Wendel
+ */
+public final class Records implements StreamingBody {
+
+    private static final String NDJSON_TYPE = "application/x-ndjson";
+    private static final String JSON_TYPE = "application/json";
+    private static final int DEFAULT_FLUSH_INTERVAL = 100;
+
+    private final Iterator<?> iterator;
+    private final AutoCloseable source;
+
+    private String prefix = "";
+    private String delimiter = "\n";
+    private String suffix = "\n";
+    private String contentType = NDJSON_TYPE;
+    private int flushInterval = DEFAULT_FLUSH_INTERVAL;
+    private RouteImpl renderer;
+
+    private Records(Iterator<?> iterator, AutoCloseable source) {
+        this.iterator = iterator;
+        this.source = source;
+    }
+
+    /**
+     * @param stream the records
+     * @return the records body, newline delimited JSON until formatted otherwise
+     */
+    public static Records of(Stream<?> stream) {
+        return new Records(stream.iterator(), stream);
+    }
+
+    /**
+     * @param iterator the records, closed when written if it is {@link AutoCloseable}
+     * @return the records body, newline delimited JSON until formatted otherwise
+     */
+    public static Records of(Iterator<?> iterator) {
+        return new Records(iterator, iterator instanceof AutoCloseable ? (AutoCloseable) iterator : null);
+    }
+
+    /**
+     * Sets what is written before the first record, between records and after the last record. Clears the
+     * content type.
+     *
+     * @param prefix    written before the records
+     * @param delimiter written between records
+     * @param suffix    written after the records
+     * @return the records body
+     */
+    public Records format(String prefix, String delimiter, String suffix) {
+        this.prefix = prefix;
+        this.delimiter = delimiter;
+        this.suffix = suffix;
+        this.contentType = null;
+        return this;
+    }
+
+    /**
+     * Writes the records as a JSON array
+     *
+     * @return the records body
+     */
+    public Records asJsonArray() {
+        return format("[", ",", "]").contentType(JSON_TYPE);
+    }
+
+    /**
+     * Sets the content type, used if the route nor a filter sets one
+     *
+     * @param contentType the content type
+     * @return the records body
+     */
+    public Records contentType(String contentType) {
+        this.contentType = contentType;
+        return this;
+    }
+
+    /**
+     * Sets how many records are written between flushes, each flush sends the written records to the client
+     *
+     * @param records the number of records
+     * @return the records body
+     */
+    public Records flushEvery(int records) {
+        if (records < 1) {
+            throw new IllegalArgumentException("The flush interval must be positive");
+        }
+        this.flushInterval = records;
+        return this;
+    }
+
+    /**
+     * Prepares a route's result to be written record by record, if it is records
+     *
+     * @param element  the result of the route
+     * @param route    the route, renders each record
+     * @param response the response, gets the content type of the records if it has none
+     * @return the records body, or null if the result isn't records
+     */
+    static Records from(Object element, RouteImpl route, Response response) {
+        Records records;
+
+        if (element instanceof Records) {
+            records = (Records) element;
+        } else if (element instanceof Stream) {
+            records = of((Stream<?>) element);
+        } else if (element instanceof Iterator) {
+            records = of((Iterator<?>) element);
+        } else {
+            return null;
+        }
+
+        records.renderer = route;
+        if (records.contentType != null && response.type() == null) {
+            response.type(records.contentType);
+        }
+        return records;
+    }
+
+    @Override
+    public void writeTo(OutputStream outputStream) throws IOException {
+        try {
+            Writer writer = new OutputStreamWriter(outputStream, StandardCharsets.UTF_8);
+            writer.write(prefix);
+
+            int written = 0;
+            while (iterator.hasNext()) {
+                if (written > 0) {
+                    writer.write(delimiter);
+                }
+                writer.write(render(iterator.next()));
+
+                if (++written % flushInterval == 0) {
+                    writer.flush();
+                }
+            }
+
+            writer.write(suffix);
+            writer.flush();
+        } finally {
+            close();
+        }
+    }
+
+    private String render(Object record) throws IOException {
+        Object rendered;
+        try {
+            rendered = renderer != null ? renderer.render(record) : record;
+        } catch (IOException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("Rendering a record failed", e);
+        }
+        return String.valueOf(rendered);
+    }
+
+    private void close() throws IOException {
+        if (source == null) {
+            return;
+        }
+        try {
+            source.close();
+        } catch (IOException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("Closing the records failed", e);
+        }
+    }
+
+}
@@ -16,8 +16,9 @@
  */
 package spark;
 
-import java.io.UnsupportedEncodingException;
-import java.net.URLDecoder;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Enumeration;
@@ -27,12 +28,22 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import javax.servlet.http.Cookie;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpSession;
 
+import spark.embeddedserver.jetty.HttpRequestWrapper;
+import spark.requestbody.BodyBuffer;
+import spark.requestbody.BodyLimitException;
+import spark.route.ParamConstraint;
 import spark.routematch.RouteMatch;
+import spark.utils.AsyncBodyReader;
 import spark.utils.IOUtils;
 import spark.utils.SparkUtils;
 import spark.utils.StringUtils;
@@ -48,8 +59,10 @@ public class Request {
 
     private static final String USER_AGENT = "user-agent";
 
-    private Map<String, String> params;
-    private List<String> splat;
+    // Cached for typed params the route doesn't have
+    private static final Object NOT_FOUND = new Object();
+
+    private RouteMatch match;
     private QueryParamsMap queryMap;
 
     private HttpServletRequest servletRequest;
@@ -59,8 +72,14 @@ public class Request {
 
 
     /* Lazy loaded stuff */
+    private Map<String, String> params = null;
+    private Map<String, Object> typedParams = null;
+    private String[] splat = null;
+
     private String body = null;
     private byte[] bodyAsBytes = null;
+    private PendingBody pendingBody = null;
+    private boolean routeReturned = false;
 
     private Set<String> headers = null;
 
@@ -109,18 +128,18 @@ public class Request {
      */
     Request(HttpServletRequest request) {
         this.servletRequest = request;
-
-        // Empty
-        params = new HashMap<>();
-        splat = new ArrayList<>();
     }
 
+    /**
+     * Changes the route match. Params and splat are extracted from the match when they are accessed.
+     *
+     * @param match the route match
+     */
     protected void changeMatch(RouteMatch match) {
-        List<String> requestList = SparkUtils.convertRouteToList(match.getRequestURI());
-        List<String> matchedList = SparkUtils.convertRouteToList(match.getMatchUri());
-
-        params = getParams(requestList, matchedList);
-        splat = getSplat(requestList, matchedList);
+        this.match = match;
+        this.params = null;
+        this.typedParams = null;
+        this.splat = null;
     }
 
     /**
@@ -129,7 +148,10 @@ public class Request {
      * @return a map containing all route params
      */
     public Map<String, String> params() {
-        return Collections.unmodifiableMap(params);
+        if (params == null) {
+            params = match != null ? getParams(match) : Collections.emptyMap();
+        }
+        return params;
     }
 
     /**
@@ -144,18 +166,61 @@ public class Request {
             return null;
         }
 
-        if (param.startsWith(":")) {
-            return params.get(param.toLowerCase()); // NOSONAR
-        } else {
-            return params.get(":" + param.toLowerCase()); // NOSONAR
+        if (params != null || match == null) {
+            return params().get(param.startsWith(":") ? param.toLowerCase() : ":" + param.toLowerCase()); // NOSONAR
+        }
+
+        return (String) getParam(match, param.startsWith(":") ? param.substring(1) : param, false);
+    }
+
+    /**
+     * Returns the typed value of the provided route pattern parameter. The value of a param with an 'int', 'long' or
+     * 'uuid' constraint is an Integer, a Long or a UUID. It has been checked when the route was matched, and is
+     * converted the first time it is asked for, then cached until the request moves on to the next filter or route.
+     * Other params are strings.
+     * Example: parameter 'id' from the following pattern: (get '/items/:id{int}'), params("id", Integer.class)
+     *
+     * @param param the param
+     * @param type  the type of the value
+     * @param <T>   the type of the value
+     * @return null if the given param is null or not found
+     * @throws IllegalArgumentException if the value is not of the given type
+     */
+    public <T> T params(String param, Class<T> type) {
+        if (param == null || match == null) {
+            return null;
+        }
+
+        String name = (param.startsWith(":") ? param.substring(1) : param).toLowerCase(); // NOSONAR
+
+        if (typedParams == null) {
+            typedParams = new HashMap<>();
+        }
+        Object value = typedParams.get(name);
+        if (value == null) {
+            value = getParam(match, name, true);
+            typedParams.put(name, value != null ? value : NOT_FOUND);
+        } else if (value == NOT_FOUND) {
+            return null;
+        }
+
+        if (value != null && !type.isInstance(value)) {
+            throw new IllegalArgumentException("Route param '" + param + "' is a "
+                                                       + value.getClass().getSimpleName()
+                                                       + ", not a "
+                                                       + type.getSimpleName());
         }
+        return type.cast(value);
     }
 
     /**
      * @return an array containing the splat (wildcard) parameters
      */
     public String[] splat() {
-        return splat.toArray(new String[splat.size()]);
+        if (splat == null) {
+            splat = match != null ? getSplat(match) : new String[0];
+        }
+        return splat.clone();
     }
 
     /**
@@ -256,9 +321,73 @@ public class Request {
         return bodyAsBytes;
     }
 
+    /**
+     * Reads the body without blocking a thread while the client uploads it. Return a stage depending on the result
+     * from the route, e.g. {@code return request.bodyAsync().thenApply(body -> save(body));}, the body is then read
+     * once the route has returned and the request is resumed when the stage completes. If the route returns anything
+     * else the body is read right after it returns, before the after filters run.
+     * The container only hands over the body once the route has returned, so waiting for this stage in the route,
+     * e.g. with {@code join()}, reads the body on the route's thread instead, and waiting for a stage derived from it
+     * in the route never returns.
+     * In a container that doesn't allow async processing the body is read right away.
+     *
+     * @return a stage completing with the request body
+     */
+    public CompletionStage<byte[]> bodyAsync() {
+        if (bodyAsBytes != null || !servletRequest.isAsyncSupported()) {
+            return CompletableFuture.completedFuture(bodyAsBytes());
+        }
+        if (pendingBody == null) {
+            pendingBody = new PendingBody();
+            if (routeReturned) {
+                // From a stage of the route or an after filter
+                pendingBody.start(servletRequest.isAsyncStarted());
+            }
+        }
+        return pendingBody;
+    }
+
+    /**
+     * Called once the route has returned, reads a body asked for with {@link #bodyAsync()}
+     *
+     * @param resumedLater true if the request is resumed when the stage returned by the route completes, the body is
+     *                     read with non-blocking IO then, and right away otherwise
+     */
+    void routeReturned(boolean resumedLater) {
+        routeReturned = true;
+        if (pendingBody != null) {
+            pendingBody.start(resumedLater);
+        }
+    }
+
+    /**
+     * Writes the request body to a file. A body that hasn't been read yet is streamed to the file rather than
+     * held in memory, a body the server buffered to a temporary file is transferred from it.
+     *
+     * @param target the file, replaced if it exists
+     * @throws spark.requestbody.BodyLimitException if the body is larger than the limit set for the route
+     * @throws IOException in case of IO error
+     */
+    public void bodyTo(Path target) throws IOException {
+        if (bodyAsBytes != null) {
+            BodyBuffer.of(bodyAsBytes).transferTo(target);
+        } else if (servletRequest instanceof HttpRequestWrapper) {
+            ((HttpRequestWrapper) servletRequest).bodyTo(target);
+        } else {
+            BodyBuffer.transfer(servletRequest.getInputStream(), target);
+        }
+    }
+
     private void readBodyAsBytes() {
         try {
-            bodyAsBytes = IOUtils.toByteArray(servletRequest.getInputStream());
+            if (servletRequest instanceof HttpRequestWrapper) {
+                bodyAsBytes = ((HttpRequestWrapper) servletRequest).bodyAsBytes();
+            } else {
+                bodyAsBytes = IOUtils.toByteArray(servletRequest.getInputStream());
+            }
+        } catch (BodyLimitException e) {
+            // Answered with the error page of the status code rather than handing the route an empty body
+            throw new UncheckedIOException(e);
         } catch (Exception e) {
             LOG.warn("Exception when reading body", e);
         }
@@ -478,59 +607,117 @@ public class Request {
         return servletRequest.getProtocol();
     }
 
-    private static Map<String, String> getParams(List<String> request, List<String> matched) {
+    /**
+     * Finds the value of a param by walking the request URI and the matched route path side by side, only the
+     * value of the param is decoded and, if typed, converted to the type of its constraint.
+     */
+    private static Object getParam(RouteMatch match, String name, boolean typed) {
+        String request = match.getRequestURI();
+        String matched = match.getMatchUri();
+
+        int valueStart = -1;
+        int valueEnd = -1;
+        int paramStart = -1;
+        int paramEnd = -1;
+
+        int requestStart = SparkUtils.nextSegmentStart(request, 0);
+        int matchedStart = SparkUtils.nextSegmentStart(matched, 0);
+
+        while (requestStart != -1 && matchedStart != -1) {
+            int requestEnd = SparkUtils.segmentEnd(request, requestStart);
+            int matchedEnd = SparkUtils.segmentEnd(matched, matchedStart);
+
+            if (matched.charAt(matchedStart) == ':'
+                    && SparkUtils.paramNameEnd(matched, matchedStart, matchedEnd) - matchedStart - 1 == name.length()
+                    && matched.regionMatches(true, matchedStart + 1, name, 0, name.length())) {
+                // The last one wins if a param name is used more than once
+                valueStart = requestStart;
+                valueEnd = requestEnd;
+                paramStart = matchedStart;
+                paramEnd = matchedEnd;
+            }
+
+            requestStart = SparkUtils.nextSegmentStart(request, requestEnd);
+            matchedStart = SparkUtils.nextSegmentStart(matched, matchedEnd);
+        }
+
+        if (valueStart == -1) {
+            return null;
+        }
+
+        String value = SparkUtils.decodeSegment(request, valueStart, valueEnd);
+
+        if (typed) {
+            int nameEnd = SparkUtils.paramNameEnd(matched, paramStart, paramEnd);
+            return ParamConstraint.convert(nameEnd < paramEnd ? matched.substring(nameEnd + 1, paramEnd - 1) : null,
+                                           value);
+        }
+        return value;
+    }
+
+    private static Map<String, String> getParams(RouteMatch match) {
+        String request = match.getRequestURI();
+        String matched = match.getMatchUri();
+
         Map<String, String> params = new HashMap<>();
 
-        for (int i = 0; (i < request.size()) && (i < matched.size()); i++) {
-            String matchedPart = matched.get(i);
-            if (SparkUtils.isParam(matchedPart)) {
-                try {
-                    String decodedReq = URLDecoder.decode(request.get(i), "UTF-8");
-                    LOG.debug("matchedPart: "
-                                      + matchedPart
-                                      + " = "
-                                      + decodedReq);
-                    params.put(matchedPart.toLowerCase(), decodedReq);
+        int requestStart = SparkUtils.nextSegmentStart(request, 0);
+        int matchedStart = SparkUtils.nextSegmentStart(matched, 0);
 
-                } catch (UnsupportedEncodingException e) {
+        while (requestStart != -1 && matchedStart != -1) {
+            int requestEnd = SparkUtils.segmentEnd(request, requestStart);
+            int matchedEnd = SparkUtils.segmentEnd(matched, matchedStart);
 
-                }
+            if (matched.charAt(matchedStart) == ':') {
+                int nameEnd = SparkUtils.paramNameEnd(matched, matchedStart, matchedEnd);
+                params.put(matched.substring(matchedStart, nameEnd).toLowerCase(), // NOSONAR
+                           SparkUtils.decodeSegment(request, requestStart, requestEnd));
             }
+
+            requestStart = SparkUtils.nextSegmentStart(request, requestEnd);
+            matchedStart = SparkUtils.nextSegmentStart(matched, matchedEnd);
         }
         return Collections.unmodifiableMap(params);
     }
 
-    private static List<String> getSplat(List<String> request, List<String> matched) {
-        int nbrOfRequestParts = request.size();
-        int nbrOfMatchedParts = matched.size();
-
-        boolean sameLength = (nbrOfRequestParts == nbrOfMatchedParts);
+    private static String[] getSplat(RouteMatch match) {
+        String request = match.getRequestURI();
+        String matched = match.getMatchUri();
 
         List<String> splat = new ArrayList<>();
 
-        for (int i = 0; (i < nbrOfRequestParts) && (i < nbrOfMatchedParts); i++) {
+        int requestStart = SparkUtils.nextSegmentStart(request, 0);
+        int matchedStart = SparkUtils.nextSegmentStart(matched, 0);
 
-            String matchedPart = matched.get(i);
+        while (requestStart != -1 && matchedStart != -1) {
+            int requestEnd = SparkUtils.segmentEnd(request, requestStart);
+            int matchedEnd = SparkUtils.segmentEnd(matched, matchedStart);
 
-            if (SparkUtils.isSplat(matchedPart)) {
+            int nextRequestStart = SparkUtils.nextSegmentStart(request, requestEnd);
+            int nextMatchedStart = SparkUtils.nextSegmentStart(matched, matchedEnd);
 
-                StringBuilder splatParam = new StringBuilder(request.get(i));
+            if (matchedEnd - matchedStart == 1 && matched.charAt(matchedStart) == '*') {
+                if (nextMatchedStart == -1 && nextRequestStart != -1) {
+                    // The last splat takes the rest of the request path
+                    StringBuilder splatParam = new StringBuilder(request.length() - requestStart);
+                    splatParam.append(request, requestStart, requestEnd);
 
-                if (!sameLength && (i == (nbrOfMatchedParts - 1))) {
-                    for (int j = i + 1; j < nbrOfRequestParts; j++) {
-                        splatParam.append("/");
-                        splatParam.append(request.get(j));
+                    for (int start = nextRequestStart; start != -1; ) {
+                        int end = SparkUtils.segmentEnd(request, start);
+                        splatParam.append('/').append(request, start, end);
+                        start = SparkUtils.nextSegmentStart(request, end);
                     }
-                }
-                try {
-                    String decodedSplat = URLDecoder.decode(splatParam.toString(), "UTF-8");
-                    splat.add(decodedSplat);
-                } catch (UnsupportedEncodingException e) {
+                    splat.add(SparkUtils.decodeSegment(splatParam.toString(), 0, splatParam.length()));
+                } else {
+                    splat.add(SparkUtils.decodeSegment(request, requestStart, requestEnd));
                 }
             }
+
+            requestStart = nextRequestStart;
+            matchedStart = nextMatchedStart;
         }
 
-        return Collections.unmodifiableList(splat);
+        return splat.toArray(new String[splat.size()]);
     }
 
     /**
@@ -542,4 +729,84 @@ public class Request {
         this.validSession = validSession;
     }
 
+    /**
+     * A body asked for with {@link #bodyAsync()}, read once the route has returned or when the route waits for it
+     */
+    private final class PendingBody extends CompletableFuture<byte[]> {
+
+        private final Thread routeThread = Thread.currentThread();
+        private boolean started;
+
+        void start(boolean async) {
+            synchronized (this) {
+                if (started) {
+                    return;
+                }
+                started = true;
+            }
+
+            if (!async) {
+                try {
+                    complete(bodyAsBytes());
+                } catch (RuntimeException e) {
+                    completeExceptionally(e);
+                }
+                return;
+            }
+
+            try {
+                if (!servletRequest.isAsyncStarted()) {
+                    servletRequest.startAsync();
+                }
+
+                CompletionStage<byte[]> read;
+                if (servletRequest instanceof HttpRequestWrapper) {
+                    read = ((HttpRequestWrapper) servletRequest).readBodyAsync();
+                } else {
+                    read = AsyncBodyReader.read(servletRequest.getInputStream(),
+                                                servletRequest.getContentLengthLong());
+                }
+
+                read.whenComplete((bytes, failure) -> {
+                    if (failure != null) {
+                        completeExceptionally(failure);
+                    } else {
+                        bodyAsBytes = bytes;
+                        complete(bytes);
+                    }
+                });
+            } catch (IOException | RuntimeException e) {
+                completeExceptionally(e);
+            }
+        }
+
+        @Override
+        public byte[] join() {
+            readIfWaitedForByRoute();
+            return super.join();
+        }
+
+        @Override
+        public byte[] get() throws InterruptedException, ExecutionException {
+            readIfWaitedForByRoute();
+            return super.get();
+        }
+
+        @Override
+        public byte[] get(long timeout, TimeUnit unit)
+                throws InterruptedException, ExecutionException, TimeoutException {
+            readIfWaitedForByRoute();
+            return super.get(timeout, unit);
+        }
+
+        /**
+         * The container won't hand over the body while the route waits for it, so the route reads it itself
+         */
+        private void readIfWaitedForByRoute() {
+            if (!isDone() && Thread.currentThread() == routeThread) {
+                start(false);
+            }
+        }
+    }
+
 }
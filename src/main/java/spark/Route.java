@@ -8,6 +8,11 @@ public interface Route {
 
     /**
      * Invoked when a request is made on this route's corresponding path e.g. '/hello'
+     * <p>
+     * The route can return a {@link java.util.concurrent.CompletionStage} to answer asynchronously. The request
+     * thread is then released and the stage's value is rendered, passed through the after filters and written when
+     * the stage completes. A stage completing exceptionally is handled like an exception thrown by the route,
+     * including halt.
      *
      * @param request  The request object providing information about the HTTP request
      * @param response The response object providing functionality for modifying the response
@@ -16,6 +16,7 @@
  */
 package spark;
 
+import java.nio.file.Path;
 import java.util.ArrayDeque;
 import java.util.Deque;
 import java.util.HashMap;
@@ -24,6 +25,8 @@ import java.util.Optional;
 import java.util.concurrent.CountDownLatch;
 import java.util.stream.Collectors;
 
+import javax.servlet.http.HttpServletResponse;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -32,9 +35,16 @@ import spark.embeddedserver.EmbeddedServers;
 import spark.embeddedserver.jetty.websocket.WebSocketHandlerClassWrapper;
 import spark.embeddedserver.jetty.websocket.WebSocketHandlerInstanceWrapper;
 import spark.embeddedserver.jetty.websocket.WebSocketHandlerWrapper;
+import spark.requestbody.BodyMemoryBudget;
+import spark.requestbody.RequestBodyConfiguration;
+import spark.serialization.SerializerRegistry;
+import spark.serialization.TypeSerializer;
+import spark.route.HttpMethod;
 import spark.route.Routes;
 import spark.route.ServletRoutes;
 import spark.ssl.SslStores;
+import spark.sse.SseHandler;
+import spark.sse.SseRoute;
 import spark.staticfiles.MimeType;
 import spark.staticfiles.StaticFilesConfiguration;
 
@@ -86,8 +96,11 @@ public final class Service extends Routable {
 
     public final Redirect redirect;
     public final StaticFiles staticFiles;
+    public final RequestBodies requestBodies;
 
     private final StaticFilesConfiguration staticFilesConfiguration;
+    private final RequestBodyConfiguration requestBodyConfiguration = new RequestBodyConfiguration();
+    private final SerializerRegistry serializerRegistry;
 
     /**
      * Creates a new Service (a Spark instance). This should be used instead of the static API if the user wants
@@ -102,11 +115,14 @@ public final class Service extends Routable {
     private Service() {
         redirect = Redirect.create(this);
         staticFiles = new StaticFiles();
+        requestBodies = new RequestBodies();
 
         if (isRunningFromServlet()) {
             staticFilesConfiguration = StaticFilesConfiguration.servletInstance;
+            serializerRegistry = SerializerRegistry.servletInstance;
         } else {
             staticFilesConfiguration = StaticFilesConfiguration.create();
+            serializerRegistry = new SerializerRegistry();
         }
     }
 
@@ -290,6 +306,18 @@ public final class Service extends Routable {
         addWebSocketHandler(path, new WebSocketHandlerInstanceWrapper(handler));
     }
 
+    /**
+     * Maps the given path to a server-sent events handler. GET requests for the path open an event stream, the
+     * handler gets an emitter to send events to the client for as long as the connection is open. The connection
+     * doesn't hold a thread, events are written with non-blocking IO.
+     *
+     * @param path    the path
+     * @param handler the handler that will get the emitter of each connection
+     */
+    public void sse(String path, SseHandler handler) {
+        get(path, SseRoute.create(handler));
+    }
+
     private synchronized void addWebSocketHandler(String path, WebSocketHandlerWrapper handlerWrapper) {
         if (initialized) {
             throwBeforeRouteMappingException();
@@ -328,7 +356,7 @@ public final class Service extends Routable {
      * @param page the custom 404 error page.
      */
     public synchronized void notFound(String page) {
-        CustomErrorPages.add(404, page);
+        errorPage(404, page);
     }
 
     /**
@@ -337,21 +365,68 @@ public final class Service extends Routable {
      * @param page the custom 500 internal server error page.
      */
     public synchronized void internalServerError(String page) {
-        CustomErrorPages.add(500, page);
+        errorPage(500, page);
     }
 
     /**
      * Maps 404 errors to the provided route.
      */
     public synchronized void notFound(Route route) {
-        CustomErrorPages.add(404, route);
+        errorPage(404, route);
     }
 
     /**
      * Maps 500 internal server errors to the provided route.
      */
     public synchronized void internalServerError(Route route) {
-        CustomErrorPages.add(500, route);
+        errorPage(500, route);
+    }
+
+    /**
+     * Maps a status code to the provided custom page. The page is used when Spark answers with the status code,
+     * e.g. 405 or 413, and when a route or filter halts with the status code and no body.
+     * The page is encoded once, when it is mapped.
+     *
+     * @param status the status code
+     * @param page   the custom error page
+     */
+    public synchronized void errorPage(int status, String page) {
+        routeMatcher().errorPages().put(status, page);
+    }
+
+    /**
+     * Maps a status code to the provided route, rendering the page each time it is used.
+     *
+     * @param status the status code
+     * @param route  the route rendering the page
+     */
+    public synchronized void errorPage(int status, Route route) {
+        errorPage(status, route, false);
+    }
+
+    /**
+     * Maps a status code to the provided route.
+     *
+     * @param status the status code
+     * @param route  the route rendering the page
+     * @param cache  true to render the page once and reuse it, if the route returns a string that doesn't
+     *               depend on the request
+     */
+    public synchronized void errorPage(int status, Route route, boolean cache) {
+        routeMatcher().errorPages().put(status, route, cache);
+    }
+
+    /**
+     * Registers the serializer writing response bodies of a type straight to the response stream, e.g. for
+     * CharSequences, Files, ReadableByteChannels or domain types. Bodies of subclasses and implementations of
+     * the type are written with it too, unless a serializer is registered for a closer type.
+     *
+     * @param type       the body type
+     * @param serializer the serializer
+     * @param <T>        the body type
+     */
+    public <T> void serializer(Class<T> type, TypeSerializer<? super T> serializer) {
+        serializerRegistry.register(type, serializer);
     }
 
     /**
@@ -380,9 +455,13 @@ public final class Service extends Routable {
      * Stops the Spark server and clears all routes
      */
     public synchronized void stop() {
+        Routes stopped = routes;
+        routes = null;
         new Thread(() -> {
             if (server != null) {
-                routes.clear();
+                if (stopped != null) {
+                    stopped.clear();
+                }
                 server.extinguish();
                 latch = new CountDownLatch(1);
             }
@@ -413,6 +492,46 @@ public final class Service extends Routable {
         pathDeque.removeLast();
     }
 
+    /**
+     * Maps a set of routes at once. The routes are published to requests being matched when all of them have been
+     * mapped, and the route index is built once for all of them instead of once per route. Each route mapped outside
+     * a batch copies the route table, so applications mapping thousands of routes should map them in a batch,
+     * for example:
+     * batch(() {@literal ->} {
+     * ....get("/users",     UserApi::list);
+     * ....get("/users/:id", UserApi::get);
+     * ....etc
+     * });
+     * Can be combined with path() calls.
+     *
+     * @param routeGroup group of routes (can also contain path() calls)
+     */
+    public synchronized void batch(RouteGroup routeGroup) {
+        init();
+        routeMatcher().batch(r -> routeGroup.addRoutes());
+    }
+
+    /**
+     * Replaces all routes, filters, exception handlers and error pages with the ones mapped by a route group,
+     * without stopping the server. The new routes are mapped off to the side and published all at once when the
+     * route group has returned, so no request is answered with 404 in between. Requests already being handled
+     * finish with the routes, exception handlers and error pages they started with. If the route group throws an
+     * exception, or maps an invalid route, nothing is replaced. For example:
+     * reload(() {@literal ->} {
+     * ....before("/*", Auth::check);
+     * ....get("/tenants/:id", TenantApi::get);
+     * ....exception(TenantException.class, TenantApi::error);
+     * ....notFound("Unknown tenant");
+     * });
+     * Can be combined with path() calls.
+     *
+     * @param routeGroup group of routes, filters, exception handlers and error pages
+     */
+    public synchronized void reload(RouteGroup routeGroup) {
+        init();
+        routeMatcher().reload(r -> routeGroup.addRoutes(), new ExceptionMapper(), new CustomErrorPages());
+    }
+
     public String getPaths() {
         return pathDeque.stream().collect(Collectors.joining(""));
     }
@@ -420,19 +539,29 @@ public final class Service extends Routable {
     @Override
     public void addRoute(String httpMethod, RouteImpl route) {
         init();
-        routes.add(httpMethod + " '" + getPaths() + route.getPath() + "'", route.getAcceptType(), route);
+        routeMatcher().add(HttpMethod.get(httpMethod.toLowerCase()), // NOSONAR
+                   withPaths(route.getPath()),
+                   route.getAcceptType(),
+                   route);
     }
 
     @Override
     public void addFilter(String httpMethod, FilterImpl filter) {
         init();
-        routes.add(httpMethod + " '" + getPaths() + filter.getPath() + "'", filter.getAcceptType(), filter);
+        routeMatcher().add(HttpMethod.get(httpMethod.toLowerCase()), // NOSONAR
+                   withPaths(filter.getPath()),
+                   filter.getAcceptType(),
+                   filter);
+    }
+
+    private String withPaths(String path) {
+        return pathDeque.isEmpty() ? path : getPaths() + path;
     }
 
     public synchronized void init() {
         if (!initialized) {
 
-            initializeRouteMatcher();
+            Routes routeMatcher = routeMatcher();
 
             if (!isRunningFromServlet()) {
                 new Thread(() -> {
@@ -443,11 +572,13 @@ public final class Service extends Routable {
                     }
 
                     server = EmbeddedServers.create(embeddedServerIdentifier,
-                                                    routes,
+                                                    routeMatcher,
                                                     staticFilesConfiguration,
                                                     hasMultipleHandlers());
 
                     server.configureWebSockets(webSocketHandlers, webSocketIdleTimeoutMillis);
+                    server.configureRequestBodies(requestBodyConfiguration);
+                    server.configureSerializers(serializerRegistry);
 
                     port = server.ignite(
                             ipAddress,
@@ -463,12 +594,19 @@ public final class Service extends Routable {
         }
     }
 
-    private void initializeRouteMatcher() {
-        if (isRunningFromServlet()) {
-            routes = ServletRoutes.get();
-        } else {
-            routes = Routes.create();
+    /**
+     * Gets the route matcher, creating it if needed. Exception handlers and error pages can be mapped before the
+     * first route, without starting the server.
+     */
+    private synchronized Routes routeMatcher() {
+        if (routes == null) {
+            if (isRunningFromServlet()) {
+                routes = ServletRoutes.get();
+            } else {
+                routes = Routes.create();
+            }
         }
+        return routes;
     }
 
     //////////////////////////////////////////////////
@@ -490,7 +628,7 @@ public final class Service extends Routable {
             }
         };
 
-        ExceptionMapper.getInstance().map(exceptionClass, wrapper);
+        routeMatcher().exceptionMapper().map(exceptionClass, wrapper);
     }
 
     //////////////////////////////////////////////////
@@ -505,7 +643,7 @@ public final class Service extends Routable {
      * @return HaltException object
      */
     public HaltException halt() {
-        throw new HaltException();
+        throw HaltException.of(HttpServletResponse.SC_OK);
     }
 
     /**
@@ -517,7 +655,7 @@ public final class Service extends Routable {
      * @return HaltException object with status code set
      */
     public HaltException halt(int status) {
-        throw new HaltException(status);
+        throw HaltException.of(status);
     }
 
     /**
@@ -619,4 +757,74 @@ public final class Service extends Routable {
         }
 
     }
+
+    /**
+     * Provides request body utility methods.
+     */
+    public final class RequestBodies {
+
+        /**
+         * Sets the size above which a buffered request body is written to a temporary file instead of kept in
+         * memory. The default is 1 MB.
+         *
+         * @param bytes the threshold in bytes
+         */
+        public void memoryThreshold(long bytes) {
+            requestBodyConfiguration.memoryThreshold(bytes);
+        }
+
+        /**
+         * Sets the directory of the temporary files request bodies are written to.
+         *
+         * @param directory the directory
+         */
+        public void tempDirectory(Path directory) {
+            requestBodyConfiguration.tempDirectory(directory);
+        }
+
+        /**
+         * Sets if the raw request input stream can be read more than once, which is the default. If it can't the
+         * body is streamed from the client instead of buffered, {@link Request#body()} can still be called any
+         * number of times.
+         *
+         * @param replayable false to stream request bodies without buffering them
+         */
+        public void replayable(boolean replayable) {
+            requestBodyConfiguration.replayable(replayable);
+        }
+
+        /**
+         * Sets the largest request body accepted. A request with a larger content length is answered with
+         * 413 Payload Too Large before the body is read, a larger body sent without a content length fails while it
+         * is read.
+         *
+         * @param bytes the limit in bytes, -1 for no limit which is the default
+         */
+        public void maxSize(long bytes) {
+            requestBodyConfiguration.maxSize(bytes);
+        }
+
+        /**
+         * Sets the largest request body accepted by the routes mapped for a path, overriding the global limit.
+         *
+         * @param path  the path the routes are mapped for, e.g. "/upload/:name"
+         * @param bytes the limit in bytes, -1 for no limit
+         */
+        public void maxSize(String path, long bytes) {
+            requestBodyConfiguration.maxSize(path, bytes);
+        }
+
+        /**
+         * Sets how many bytes of request bodies can be buffered in memory at the same time, for all Spark
+         * instances in the process. When the budget is used up a request waits for memory to be released and is
+         * answered with 503 Service Unavailable if none is released in time.
+         *
+         * @param bytes         the budget in bytes, -1 for no budget which is the default
+         * @param maxWaitMillis how long a request waits for memory to be released
+         */
+        public void memoryBudget(long bytes, long maxWaitMillis) {
+            BodyMemoryBudget.getInstance().configure(bytes, maxWaitMillis);
+        }
+
+    }
 }
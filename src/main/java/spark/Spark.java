@@ -16,6 +16,9 @@
  */
 package spark;
 
+import spark.serialization.TypeSerializer;
+import spark.sse.SseHandler;
+
 import static spark.Service.ignite;
 
 /**
@@ -63,6 +66,11 @@ public class Spark {
      */
     public static final Service.StaticFiles staticFiles = getInstance().staticFiles;
 
+    /**
+     * Statically import this for request body utility functionality, see {@link spark.Service.RequestBodies}
+     */
+    public static final Service.RequestBodies requestBodies = getInstance().requestBodies;
+
     /**
      * Add a path-prefix to the routes declared in the routeGroup
      * The path() method adds a path-fragment to a path-stack, adds
@@ -82,6 +90,40 @@ public class Spark {
         getInstance().path(path, routeGroup);
     }
 
+    /**
+     * Maps a set of routes at once. The routes are published to requests being matched when all of them have been
+     * mapped, and the route index is built once for all of them instead of once per route, for example:
+     * batch(() {@literal ->} {
+     * ....get("/users",     UserApi::list);
+     * ....get("/users/:id", UserApi::get);
+     * ....etc
+     * });
+     * Can be combined with path() calls.
+     *
+     * @param routeGroup group of routes (can also contain path() calls)
+     */
+    public static void batch(RouteGroup routeGroup) {
+        getInstance().batch(routeGroup);
+    }
+
+    /**
+     * Replaces all routes, filters, exception handlers and error pages with the ones mapped by a route group,
+     * without stopping the server. The new routes are published all at once when the route group has returned,
+     * and requests already being handled finish with the ones they started with. If the route group throws an
+     * exception nothing is replaced. For example:
+     * reload(() {@literal ->} {
+     * ....get("/tenants/:id", TenantApi::get);
+     * ....exception(TenantException.class, TenantApi::error);
+     * ....notFound("Unknown tenant");
+     * });
+     * Can be combined with path() calls.
+     *
+     * @param routeGroup group of routes, filters, exception handlers and error pages
+     */
+    public static void reload(RouteGroup routeGroup) {
+        getInstance().reload(routeGroup);
+    }
+
     /**
      * Map the route for HTTP GET requests
      *
@@ -1096,6 +1138,20 @@ public class Spark {
         getInstance().webSocketIdleTimeoutMillis(timeoutMillis);
     }
 
+    ////////////////////////
+    // Server-sent events //
+
+    /**
+     * Maps the given path to a server-sent events handler. GET requests for the path open an event stream, the
+     * handler gets an emitter to send events to the client for as long as the connection is open.
+     *
+     * @param path    the path
+     * @param handler the handler that will get the emitter of each connection
+     */
+    public static void sse(String path, SseHandler handler) {
+        getInstance().sse(path, handler);
+    }
+
     /**
      * Maps 404 Not Found errors to the provided custom page
      */
@@ -1124,6 +1180,36 @@ public class Spark {
         getInstance().internalServerError(route);
     }
 
+    /**
+     * Maps a status code to the provided custom page, used when Spark answers with the status code and when a
+     * route or filter halts with it and no body
+     */
+    public static void errorPage(int status, String page) {
+        getInstance().errorPage(status, page);
+    }
+
+    /**
+     * Maps a status code to the provided route, rendering the page each time it is used
+     */
+    public static void errorPage(int status, Route route) {
+        getInstance().errorPage(status, route);
+    }
+
+    /**
+     * Maps a status code to the provided route, rendering the page once and reusing it if cache is true
+     */
+    public static void errorPage(int status, Route route, boolean cache) {
+        getInstance().errorPage(status, route, cache);
+    }
+
+    /**
+     * Registers the serializer writing response bodies of a type, and of its subclasses and implementations,
+     * straight to the response stream
+     */
+    public static <T> void serializer(Class<T> type, TypeSerializer<? super T> serializer) {
+        getInstance().serializer(type, serializer);
+    }
+
     /**
      * Initializes the Spark server. SHOULD just be used when using the Websockets functionality.
      */
@@ -0,0 +1,50 @@
+/*
+ * Copyright 2016 - Per Wendel
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spark;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A body that is written to the response as it is produced instead of being held in memory. Return one from a route
+ * to stream large responses, e.g. exports:
+ * <pre>
+ * get("/export", (request, response) -&gt; (StreamingBody) out -&gt; {
+ *     Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+ *     for (Row row : rows()) {
+ *         writer.write(row.toCsv());
+ *     }
+ *     writer.flush();
+ * });
+ * </pre>
+ * The body is written after the after filters have run, so they can still set headers. The response is sent with
+ * chunked encoding, the container sends a chunk whenever its buffer is full or the stream is flushed.
+ *
+ * @author Per Wendel
+ */
+@FunctionalInterface
+public interface StreamingBody {
+
+    /**
+     * Writes the body.
+     *
+     * @param outputStream the response output stream, gzip compressed if the response is. It is closed by Spark.
+     * @throws IOException in case of IO error
+     */
+    void writeTo(OutputStream outputStream) throws IOException;
+
+}
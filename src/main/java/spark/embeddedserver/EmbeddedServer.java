@@ -21,6 +21,8 @@ import java.util.Optional;
 import java.util.concurrent.CountDownLatch;
 
 import spark.embeddedserver.jetty.websocket.WebSocketHandlerWrapper;
+import spark.requestbody.RequestBodyConfiguration;
+import spark.serialization.SerializerRegistry;
 import spark.ssl.SslStores;
 
 /**
@@ -61,6 +63,24 @@ public interface EmbeddedServer {
         NotSupportedException.raise(getClass().getSimpleName(), "Web Sockets");
     }
 
+    /**
+     * Configures how the embedded server buffers request bodies.
+     *
+     * @param requestBodyConfiguration - the request body configuration, can still change while the server runs.
+     */
+    default void configureRequestBodies(RequestBodyConfiguration requestBodyConfiguration) {
+        // request bodies are left to the server
+    }
+
+    /**
+     * Configures the serializers writing response bodies.
+     *
+     * @param serializers - the serializer registry, serializers can still be registered while the server runs.
+     */
+    default void configureSerializers(SerializerRegistry serializers) {
+        // response bodies are left to the server
+    }
+
     /**
      * Extinguish the embedded server.
      */
@@ -36,6 +36,8 @@ import org.slf4j.LoggerFactory;
 import spark.embeddedserver.EmbeddedServer;
 import spark.embeddedserver.jetty.websocket.WebSocketHandlerWrapper;
 import spark.embeddedserver.jetty.websocket.WebSocketServletContextHandlerFactory;
+import spark.requestbody.RequestBodyConfiguration;
+import spark.serialization.SerializerRegistry;
 import spark.ssl.SslStores;
 
 /**
@@ -68,6 +70,20 @@ public class EmbeddedJettyServer implements EmbeddedServer {
         this.webSocketIdleTimeoutMillis = webSocketIdleTimeoutMillis;
     }
 
+    @Override
+    public void configureRequestBodies(RequestBodyConfiguration requestBodyConfiguration) {
+        if (handler instanceof JettyHandler) {
+            ((JettyHandler) handler).setRequestBodyConfiguration(requestBodyConfiguration);
+        }
+    }
+
+    @Override
+    public void configureSerializers(SerializerRegistry serializers) {
+        if (handler instanceof JettyHandler) {
+            ((JettyHandler) handler).setSerializers(serializers);
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
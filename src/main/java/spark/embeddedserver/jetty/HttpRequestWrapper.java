@@ -16,26 +16,42 @@
  */
 package spark.embeddedserver.jetty;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
 
 import javax.servlet.ReadListener;
 import javax.servlet.ServletInputStream;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletRequestWrapper;
 
-import spark.utils.IOUtils;
+import spark.requestbody.BodyBuffer;
+import spark.requestbody.LimitedInputStream;
+import spark.requestbody.RequestBodyConfiguration;
+import spark.utils.AsyncBodyReader;
 
 /**
- * Http request wrapper. Wraps the request so 'getInputStream()' can be called multiple times.
+ * Http request wrapper. Wraps the request so 'getInputStream()' can be called multiple times, the body is buffered
+ * the first time it is read as set in the {@link RequestBodyConfiguration}.
  * Also has methods for checking if request has been consumed.
  */
 public class HttpRequestWrapper extends HttpServletRequestWrapper {
-    private byte[] cachedBytes;
+    private final RequestBodyConfiguration bodyConfiguration;
+    private BodyBuffer buffer;
+    private boolean released;
+    private long maxBodySize = -1;
     private boolean notConsumed = false;
 
     public HttpRequestWrapper(HttpServletRequest request) {
+        this(request, new RequestBodyConfiguration());
+    }
+
+    public HttpRequestWrapper(HttpServletRequest request, RequestBodyConfiguration bodyConfiguration) {
         super(request);
+        this.bodyConfiguration = bodyConfiguration;
     }
 
     public boolean notConsumed() {
@@ -46,47 +62,201 @@ public class HttpRequestWrapper extends HttpServletRequestWrapper {
         notConsumed = consumed;
     }
 
+    /**
+     * Sets the largest body accepted for the route a request is matched to, from the {@link RequestBodyConfiguration}
+     *
+     * @param routePath the path the route is mapped for, null if no route matched
+     * @return false if the content length is larger, the body isn't read then
+     */
+    public boolean limitBody(String routePath) {
+        maxBodySize = bodyConfiguration.maxSizeFor(routePath);
+        return maxBodySize < 0 || getContentLengthLong() <= maxBodySize;
+    }
+
     @Override
     public ServletInputStream getInputStream() throws IOException {
-        if (cachedBytes == null) {
-            cacheInputStream();
+        if (buffered() == null && !bodyConfiguration.replayable()) {
+            if (maxBodySize < 0) {
+                return super.getInputStream();
+            }
+            return new LimitedServletInputStream(super.getInputStream(), maxBodySize);
+        }
+        return new CachedServletInputStream(buffer().newInputStream());
+    }
+
+    /**
+     * Reads the body into an array sized from the content length, the buffer itself for bodies kept in memory in an
+     * exactly sized array, see {@link BodyBuffer#toByteArray()}
+     *
+     * @return the body
+     * @throws IOException in case of IO error
+     */
+    public byte[] bodyAsBytes() throws IOException {
+        return buffer().toByteArray();
+    }
+
+    /**
+     * Reads the body with non-blocking IO and caches it, the request must be in async mode
+     *
+     * @return a stage completing with the body
+     * @throws IOException in case of IO error
+     */
+    public CompletionStage<byte[]> readBodyAsync() throws IOException {
+        BodyBuffer buffered = buffered();
+        if (buffered != null) {
+            return CompletableFuture.completedFuture(buffered.toByteArray());
         }
-        return new CachedServletInputStream();
+        return AsyncBodyReader.read(super.getInputStream(),
+                                     getContentLengthLong(),
+                                     bodyConfiguration,
+                                     maxBodySize).thenApply(read -> {
+            try {
+                keep(read);
+                return read.toByteArray();
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        });
     }
 
-    private void cacheInputStream() throws IOException {
-        cachedBytes = IOUtils.toByteArray(super.getInputStream());
+    /**
+     * Writes the body to a file. A body that isn't buffered yet is streamed to the file, and only buffered if the
+     * input stream has to be replayable.
+     *
+     * @param target the file, replaced if it exists
+     * @throws IOException in case of IO error
+     */
+    public void bodyTo(Path target) throws IOException {
+        if (buffered() == null && !bodyConfiguration.replayable()) {
+            BodyBuffer.transfer(LimitedInputStream.limit(super.getInputStream(), maxBodySize), target);
+        } else {
+            buffer().transferTo(target);
+        }
     }
 
-    private class CachedServletInputStream extends ServletInputStream {
-        private ByteArrayInputStream byteArrayInputStream;
+    /**
+     * Releases the memory reserved for the body and deletes the temporary file of a body buffered to disk, called
+     * when the request is completed. A body still being read asynchronously is released once it has been read, and
+     * the body can't be read any more.
+     */
+    public synchronized void release() throws IOException {
+        released = true;
+        if (buffer != null) {
+            buffer.close();
+        }
+    }
+
+    private synchronized BodyBuffer buffered() throws IOException {
+        if (released) {
+            throw new IOException("The request has been completed, its body has been released");
+        }
+        return buffer;
+    }
+
+    /**
+     * Keeps the body read asynchronously, or releases it right away if the request was completed while it was read
+     */
+    private synchronized void keep(BodyBuffer read) throws IOException {
+        if (released) {
+            read.close();
+        } else {
+            buffer = read;
+        }
+    }
+
+    private synchronized BodyBuffer buffer() throws IOException {
+        if (buffered() == null) {
+            buffer = BodyBuffer.read(super.getInputStream(), getContentLengthLong(), bodyConfiguration, maxBodySize);
+        }
+        return buffer;
+    }
+
+    private static class CachedServletInputStream extends ServletInputStream {
+        private final InputStream inputStream;
+
+        public CachedServletInputStream(InputStream inputStream) {
+            this.inputStream = inputStream;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return inputStream.read();
+        }
 
-        public CachedServletInputStream() {
-            byteArrayInputStream = new ByteArrayInputStream(cachedBytes);
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return inputStream.read(b, off, len);
+        }
+
+        @Override
+        public int available() throws IOException {
+            return inputStream.available();
+        }
+
+        @Override
+        public void close() throws IOException {
+            inputStream.close();
+        }
+
+        @Override
+        public boolean isFinished() {
+            try {
+                return available() <= 0;
+            } catch (IOException e) {
+                return true;
+            }
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void setReadListener(ReadListener readListener) {
+        }
+    }
+
+    /**
+     * The input stream of the request, passed through, failing once more bytes than the limit have been read
+     */
+    private static class LimitedServletInputStream extends ServletInputStream {
+        private final ServletInputStream servletInputStream;
+        private final InputStream inputStream;
+
+        LimitedServletInputStream(ServletInputStream servletInputStream, long maxSize) {
+            this.servletInputStream = servletInputStream;
+            this.inputStream = LimitedInputStream.limit(servletInputStream, maxSize);
+        }
+
+        @Override
+        public int read() throws IOException {
+            return inputStream.read();
         }
 
         @Override
-        public int read() {
-            return byteArrayInputStream.read();
+        public int read(byte[] b, int off, int len) throws IOException {
+            return inputStream.read(b, off, len);
         }
 
         @Override
-        public int available() {
-            return byteArrayInputStream.available();
+        public int available() throws IOException {
+            return inputStream.available();
         }
 
         @Override
         public boolean isFinished() {
-            return available() <= 0;
+            return servletInputStream.isFinished();
         }
 
         @Override
         public boolean isReady() {
-            return available() >= 0;
+            return servletInputStream.isReady();
         }
 
         @Override
         public void setReadListener(ReadListener readListener) {
+            servletInputStream.setReadListener(readListener);
         }
     }
-}
\ No newline at end of file
+}
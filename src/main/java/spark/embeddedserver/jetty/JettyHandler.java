@@ -18,6 +18,8 @@ package spark.embeddedserver.jetty;
 
 import java.io.IOException;
 
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
 import javax.servlet.Filter;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
@@ -26,6 +28,10 @@ import javax.servlet.http.HttpServletResponse;
 import org.eclipse.jetty.server.Request;
 import org.eclipse.jetty.server.session.SessionHandler;
 
+import spark.http.matching.MatcherFilter;
+import spark.requestbody.RequestBodyConfiguration;
+import spark.serialization.SerializerRegistry;
+
 /**
  * Simple Jetty Handler
  *
@@ -33,12 +39,25 @@ import org.eclipse.jetty.server.session.SessionHandler;
  */
 public class JettyHandler extends SessionHandler {
 
+    private static final org.slf4j.Logger LOG = org.slf4j.LoggerFactory.getLogger(JettyHandler.class);
+
     private Filter filter;
+    private RequestBodyConfiguration requestBodyConfiguration = new RequestBodyConfiguration();
 
     public JettyHandler(Filter filter) {
         this.filter = filter;
     }
 
+    public void setRequestBodyConfiguration(RequestBodyConfiguration requestBodyConfiguration) {
+        this.requestBodyConfiguration = requestBodyConfiguration;
+    }
+
+    public void setSerializers(SerializerRegistry serializers) {
+        if (filter instanceof MatcherFilter) {
+            ((MatcherFilter) filter).setSerializers(serializers);
+        }
+    }
+
     @Override
     public void doHandle(
             String target,
@@ -46,8 +65,16 @@ public class JettyHandler extends SessionHandler {
             HttpServletRequest request,
             HttpServletResponse response) throws IOException, ServletException {
 
-        HttpRequestWrapper wrapper = new HttpRequestWrapper(request);
-        filter.doFilter(wrapper, response, null);
+        HttpRequestWrapper wrapper = new HttpRequestWrapper(request, requestBodyConfiguration);
+        try {
+            filter.doFilter(wrapper, response, null);
+        } finally {
+            if (request.isAsyncStarted()) {
+                request.getAsyncContext().addListener(new ReleaseOnComplete(wrapper));
+            } else {
+                release(wrapper);
+            }
+        }
 
         if (wrapper.notConsumed()) {
             baseRequest.setHandled(false);
@@ -57,4 +84,44 @@ public class JettyHandler extends SessionHandler {
 
     }
 
-}
\ No newline at end of file
+    private static void release(HttpRequestWrapper wrapper) {
+        try {
+            wrapper.release();
+        } catch (IOException e) {
+            LOG.warn("Exception when releasing the request body", e);
+        }
+    }
+
+    /**
+     * Releases the request body of an async request once the request is completed.
+     */
+    private static class ReleaseOnComplete implements AsyncListener {
+
+        private final HttpRequestWrapper wrapper;
+
+        ReleaseOnComplete(HttpRequestWrapper wrapper) {
+            this.wrapper = wrapper;
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            release(wrapper);
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            //
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            //
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            //
+        }
+    }
+
+}
@@ -19,9 +19,6 @@ package spark.http.matching;
 import java.util.List;
 
 import spark.FilterImpl;
-import spark.Request;
-import spark.RequestResponseFactory;
-import spark.route.HttpMethod;
 import spark.routematch.RouteMatch;
 
 /**
@@ -30,26 +27,19 @@ import spark.routematch.RouteMatch;
 final class AfterFilters {
 
     static void execute(RouteContext context) throws Exception {
+        List<RouteMatch> matchSet = context.pipeline().getAfterFilters();
 
-        Object content = context.body().get();
+        if (matchSet.isEmpty()) {
+            return;
+        }
 
-        List<RouteMatch> matchSet = context.routeMatcher().findMultiple(HttpMethod.after,
-                                                                        context.uri(),
-                                                                        context.acceptType());
+        Object content = context.body().get();
 
         for (RouteMatch filterMatch : matchSet) {
             Object filterTarget = filterMatch.getTarget();
 
             if (filterTarget instanceof FilterImpl) {
-
-                if (context.requestWrapper().getDelegate() == null) {
-                    Request request = RequestResponseFactory.create(filterMatch, context.httpRequest());
-                    context.requestWrapper().setDelegate(request);
-                } else {
-                    context.requestWrapper().changeMatch(filterMatch);
-                }
-
-                context.responseWrapper().setDelegate(context.response());
+                context.retarget(filterMatch);
 
                 FilterImpl filter = (FilterImpl) filterTarget;
                 filter.handle(context.requestWrapper(), context.responseWrapper());
@@ -22,8 +22,9 @@ import java.io.OutputStream;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import spark.CustomErrorPages.EncodedPage;
 import spark.utils.GzipUtils;
-import spark.serialization.SerializerChain;
+import spark.serialization.SerializerRegistry;
 
 /**
  * Represents the 'body'
@@ -57,10 +58,15 @@ final class Body {
     }
 
     public void serializeTo(HttpServletResponse httpResponse,
-                            SerializerChain serializerChain,
+                            SerializerRegistry serializers,
                             HttpServletRequest httpRequest) throws IOException {
 
         if (!httpResponse.isCommitted()) {
+            if (content instanceof EncodedPage) {
+                writePage(httpResponse, (EncodedPage) content, httpRequest);
+                return;
+            }
+
             if (httpResponse.getContentType() == null) {
                 httpResponse.setContentType("text/html; charset=utf-8");
             }
@@ -69,12 +75,34 @@ final class Body {
             OutputStream responseStream = GzipUtils.checkAndWrap(httpRequest, httpResponse, true);
 
             // serialize the body to output stream
-            serializerChain.process(responseStream, content);
+            serializers.process(responseStream, content);
 
             responseStream.flush(); // needed for GZIP stream. NOt sure where the HTTP response actually gets cleaned up
             responseStream.close(); // needed for GZIP
         }
     }
 
+    /**
+     * Writes an error page that is already encoded, with a content length unless it is gzipped
+     */
+    private static void writePage(HttpServletResponse httpResponse,
+                                  EncodedPage page,
+                                  HttpServletRequest httpRequest) throws IOException {
+
+        if (httpResponse.getContentType() == null) {
+            httpResponse.setContentType(page.contentType() != null ? page.contentType() : "text/html; charset=utf-8");
+        }
+
+        OutputStream responseStream = GzipUtils.checkAndWrap(httpRequest, httpResponse, true);
+
+        if (responseStream == httpResponse.getOutputStream()) {
+            httpResponse.setContentLength(page.length());
+        }
+        page.writeTo(responseStream);
+
+        responseStream.flush();
+        responseStream.close();
+    }
+
 
 }
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2016 - Per Wendel
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spark.http.matching;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import spark.CustomErrorPages;
+import spark.CustomErrorPages.EncodedPage;
+import spark.RequestResponseFactory;
+import spark.routematch.RoutePipeline;
+
+/**
+ * Gets the error pages of the matched pipeline for the body of error responses.
+ *
+ * @author Per Wendel
+ */
+final class ErrorPages {
+
+    private ErrorPages() {
+    }
+
+    /**
+     * Gets the error page for a status code. A page that doesn't have to be rendered is returned already encoded,
+     * and the request and response for a route rendering the page are only created if the wrappers don't hold
+     * them yet.
+     */
+    static Object get(RoutePipeline pipeline,
+                      HttpServletRequest httpRequest,
+                      HttpServletResponse httpResponse,
+                      RequestWrapper requestWrapper,
+                      ResponseWrapper responseWrapper,
+                      int status) {
+
+        CustomErrorPages errorPages = pipeline.getErrorPages();
+        EncodedPage page = errorPages.encodedPageFor(status);
+
+        if (page != null) {
+            return page;
+        }
+
+        if (requestWrapper.getDelegate() == null) {
+            requestWrapper.setDelegate(RequestResponseFactory.create(httpRequest));
+        }
+        if (responseWrapper.getDelegate() == null) {
+            responseWrapper.setDelegate(RequestResponseFactory.create(httpResponse));
+        }
+        return errorPages.pageFor(status, requestWrapper, responseWrapper);
+    }
+
+    static Object get(RouteContext context, int status) {
+        return get(context.pipeline(),
+                   context.httpRequest(),
+                   context.response().raw(),
+                   context.requestWrapper(),
+                   context.responseWrapper(),
+                   status);
+    }
+
+}
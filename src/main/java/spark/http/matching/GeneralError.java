@@ -19,27 +19,27 @@ package spark.http.matching;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
-import spark.CustomErrorPages;
 import spark.ExceptionHandlerImpl;
-import spark.ExceptionMapper;
-import spark.RequestResponseFactory;
+import spark.routematch.RoutePipeline;
 
 /**
- * Modifies the HTTP response and body based on the provided exception and request/response wrappers.
+ * Modifies the HTTP response and body based on the provided exception and request/response wrappers, with the
+ * exception handlers and error pages of the matched pipeline.
  */
 final class GeneralError {
 
     /**
      * Modifies the HTTP response and body based on the provided exception.
      */
-    static void modify(HttpServletRequest httpRequest,
+    static void modify(RoutePipeline pipeline,
+                       HttpServletRequest httpRequest,
                        HttpServletResponse httpResponse,
                        Body body,
                        RequestWrapper requestWrapper,
                        ResponseWrapper responseWrapper,
                        Exception e) {
 
-        ExceptionHandlerImpl handler = ExceptionMapper.getInstance().getHandler(e);
+        ExceptionHandlerImpl handler = pipeline.getExceptionMapper().getHandler(e);
 
         if (handler != null) {
             handler.handle(e, requestWrapper, responseWrapper);
@@ -50,15 +50,7 @@ final class GeneralError {
             }
         } else {
             httpResponse.setStatus(500);
-
-            if (CustomErrorPages.existsFor(500)) {
-                requestWrapper.setDelegate(RequestResponseFactory.create(httpRequest));
-                responseWrapper.setDelegate(RequestResponseFactory.create(httpResponse));
-                body.set(CustomErrorPages.getFor(500, requestWrapper, responseWrapper));
-            } else {
-                body.set(CustomErrorPages.INTERNAL_ERROR);
-            }
-
+            body.set(ErrorPages.get(pipeline, httpRequest, httpResponse, requestWrapper, responseWrapper, 500));
         }
     }
 
@@ -17,7 +17,20 @@
 package spark.http.matching;
 
 import java.io.IOException;
-
+import java.io.UncheckedIOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
 import javax.servlet.Filter;
 import javax.servlet.FilterChain;
 import javax.servlet.FilterConfig;
@@ -27,14 +40,19 @@ import javax.servlet.ServletResponse;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import spark.BodyPublisher;
 import spark.CustomErrorPages;
+import spark.CustomErrorPages.EncodedPage;
 import spark.HaltException;
 import spark.RequestResponseFactory;
 import spark.Response;
 import spark.embeddedserver.jetty.HttpRequestWrapper;
+import spark.requestbody.BodyLimitException;
 import spark.route.HttpMethod;
-import spark.serialization.SerializerChain;
+import spark.routematch.RoutePipeline;
+import spark.serialization.SerializerRegistry;
 import spark.staticfiles.StaticFilesConfiguration;
+import spark.utils.GzipUtils;
 
 /**
  * Matches Spark routes and filters.
@@ -48,14 +66,20 @@ public class MatcherFilter implements Filter {
     private static final String ACCEPT_TYPE_REQUEST_MIME_HEADER = "Accept";
     private static final String HTTP_METHOD_OVERRIDE_HEADER = "X-HTTP-Method-Override";
 
+    private static final long NOT_MAPPED_LOG_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+
     private final StaticFilesConfiguration staticFiles;
 
     private spark.route.Routes routeMatcher;
-    private SerializerChain serializerChain;
+    private SerializerRegistry serializers;
 
     private boolean externalContainer;
     private boolean hasOtherHandlers;
 
+    // Requests for unmapped paths are logged at most once per interval, with the number of requests not logged
+    private final AtomicLong lastNotMappedLog = new AtomicLong(System.nanoTime() - NOT_MAPPED_LOG_INTERVAL);
+    private final LongAdder notMappedNotLogged = new LongAdder();
+
     /**
      * Constructor
      *
@@ -74,7 +98,16 @@ public class MatcherFilter implements Filter {
         this.staticFiles = staticFiles;
         this.externalContainer = externalContainer;
         this.hasOtherHandlers = hasOtherHandlers;
-        this.serializerChain = new SerializerChain();
+        this.serializers = new SerializerRegistry();
+    }
+
+    /**
+     * Sets the serializers writing response bodies
+     *
+     * @param serializers the serializer registry
+     */
+    public void setSerializers(SerializerRegistry serializers) {
+        this.serializers = serializers;
     }
 
     public void init(FilterConfig config) {
@@ -102,14 +135,27 @@ public class MatcherFilter implements Filter {
         String uri = httpRequest.getRequestURI();
         String acceptType = httpRequest.getHeader(ACCEPT_TYPE_REQUEST_MIME_HEADER);
 
+        HttpMethod httpMethod = HttpMethod.get(httpMethodStr);
+
+        RoutePipeline pipeline = routeMatcher.findPipeline(httpMethod, uri, acceptType);
+
+        if (pipeline.isEmpty() && consumeUnmapped(servletRequest, httpResponse, chain, pipeline, uri, acceptType)) {
+            return;
+        }
+
+        if (servletRequest instanceof HttpRequestWrapper && !((HttpRequestWrapper) servletRequest).limitBody(
+                pipeline.getRoute() != null ? pipeline.getRoute().getMatchUri() : null)) {
+            rejectTooLarge(httpResponse, pipeline);
+            return;
+        }
+
         Body body = Body.create();
 
         RequestWrapper requestWrapper = RequestWrapper.create();
         ResponseWrapper responseWrapper = ResponseWrapper.create();
 
         Response response = RequestResponseFactory.create(httpResponse);
-
-        HttpMethod httpMethod = HttpMethod.get(httpMethodStr);
+        responseWrapper.setDelegate(response);
 
         RouteContext context = RouteContext.create()
                 .withMatcher(routeMatcher)
@@ -120,62 +166,300 @@ public class MatcherFilter implements Filter {
                 .withRequestWrapper(requestWrapper)
                 .withResponseWrapper(responseWrapper)
                 .withResponse(response)
-                .withHttpMethod(httpMethod);
+                .withHttpMethod(httpMethod)
+                .withPipeline(pipeline);
 
         try {
 
             BeforeFilters.execute(context);
             Routes.execute(context);
+
+            context.requestWrapper().routeReturned(context.pendingResult() != null && httpRequest.isAsyncSupported());
+
+            if (context.pendingResult() != null) {
+                if (httpRequest.isAsyncSupported()) {
+                    resumeWhenComplete(context);
+                    return;
+                }
+                // Run in a container that doesn't allow async processing, wait for the result on this thread
+                Routes.complete(context, await(context.pendingResult()));
+            }
+
             AfterFilters.execute(context);
 
-        } catch (HaltException halt) {
+        } catch (Exception exception) {
+            modify(context, exception);
+        }
+
+        if (httpRequest.isAsyncStarted()) {
+            // The route took over the response, e.g. a server-sent events stream. A body set by an after filter or
+            // an exception handler isn't written over it.
+            return;
+        }
 
-            Halt.modify(httpResponse, body, halt);
+        complete(context, servletRequest, chain);
+    }
+
+    /**
+     * Releases the request thread and resumes the request on the thread that completes the stage returned by an
+     * asynchronous route, or on a container thread if the async processing times out first.
+     */
+    private void resumeWhenComplete(RouteContext context) {
+        HttpServletRequest httpRequest = context.httpRequest();
+
+        // Already started if the route reads the body asynchronously
+        AsyncContext asyncContext = httpRequest.isAsyncStarted()
+                ? httpRequest.getAsyncContext()
+                : httpRequest.startAsync();
+        AtomicBoolean resumed = new AtomicBoolean();
+
+        asyncContext.addListener(new AsyncListener() {
+            @Override
+            public void onTimeout(AsyncEvent event) {
+                if (resumed.compareAndSet(false, true)) {
+                    resume(context, asyncContext, null, new TimeoutException(
+                            "The route didn't complete within " + asyncContext.getTimeout() + " ms"));
+                }
+            }
+
+            @Override
+            public void onError(AsyncEvent event) {
+                // The client is gone, there is nobody to answer
+                resumed.set(true);
+            }
+
+            @Override
+            public void onComplete(AsyncEvent event) {
+                //
+            }
+
+            @Override
+            public void onStartAsync(AsyncEvent event) {
+                //
+            }
+        });
+
+        context.pendingResult().whenComplete((result, failure) -> {
+            if (resumed.compareAndSet(false, true)) {
+                resume(context, asyncContext, result, failure);
+            }
+        });
+    }
+
+    private void resume(RouteContext context, AsyncContext asyncContext, Object result, Throwable failure) {
+        try {
+            try {
+                if (failure != null) {
+                    throw unwrap(failure);
+                }
+                Routes.complete(context, result);
+                AfterFilters.execute(context);
+
+            } catch (Exception exception) {
+                modify(context, exception);
+            }
+
+            if (complete(context, null, null)) {
+                return;
+            }
+
+        } catch (Exception e) {
+            LOG.warn("Exception when completing asynchronous request [{}]", context.uri(), e);
+        }
+        asyncContext.complete();
+    }
+
+    private static void modify(RouteContext context, Exception exception) {
+        HttpServletResponse httpResponse = context.response().raw();
+
+        if (exception instanceof UncheckedIOException && exception.getCause() instanceof BodyLimitException) {
+            // Thrown by Request.body()
+            exception = (BodyLimitException) exception.getCause();
+        }
 
-        } catch (Exception generalException) {
+        if (exception instanceof HaltException) {
+            HaltException halt = (HaltException) exception;
+            Halt.modify(httpResponse, context.body(), halt);
 
+            if (halt.body() == null && context.pipeline().getErrorPages().has(halt.statusCode())) {
+                context.body().set(ErrorPages.get(context, halt.statusCode()));
+            }
+        } else if (exception instanceof BodyLimitException) {
+            int statusCode = ((BodyLimitException) exception).statusCode();
+            httpResponse.setStatus(statusCode);
+            context.body().set(ErrorPages.get(context, statusCode));
+        } else {
             GeneralError.modify(
-                    httpRequest,
+                    context.pipeline(),
+                    context.httpRequest(),
                     httpResponse,
-                    body,
-                    requestWrapper,
-                    responseWrapper,
-                    generalException);
-
+                    context.body(),
+                    context.requestWrapper(),
+                    context.responseWrapper(),
+                    exception);
         }
+    }
+
+    /**
+     * Answers a request once the filters and route have run. The servlet request and chain are null for requests
+     * resumed after an asynchronous route, those can't be handed to other handlers any more.
+     *
+     * @return true if the body is left to be written asynchronously, which completes the request
+     */
+    private boolean complete(RouteContext context,
+                          ServletRequest servletRequest,
+                          FilterChain chain) throws IOException, ServletException {
+
+        HttpServletRequest httpRequest = context.httpRequest();
+        HttpServletResponse httpResponse = context.response().raw();
+        Body body = context.body();
 
         // If redirected and content is null set to empty string to not throw NotConsumedException
-        if (body.notSet() && responseWrapper.isRedirected()) {
+        if (body.notSet() && context.responseWrapper().isRedirected()) {
             body.set("");
         }
 
         if (body.notSet() && hasOtherHandlers) {
             if (servletRequest instanceof HttpRequestWrapper) {
                 ((HttpRequestWrapper) servletRequest).notConsumed(true);
-                return;
+                return false;
             }
         }
 
+        if (body.notSet() && !externalContainer && context.pipeline().getAllow() != null) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("The requested route [{}] is mapped in Spark for {}, not for {}",
+                          context.uri(), context.pipeline().getAllow(), getHttpMethodFrom(httpRequest));
+            }
+            httpResponse.setStatus(HttpServletResponse.SC_METHOD_NOT_ALLOWED);
+            httpResponse.setHeader(Routes.ALLOW_HEADER, context.pipeline().getAllow());
+            body.set(ErrorPages.get(context, HttpServletResponse.SC_METHOD_NOT_ALLOWED));
+        }
+
         if (body.notSet() && !externalContainer) {
-            LOG.info("The requested route [{}] has not been mapped in Spark for {}: [{}]",
-                     uri, ACCEPT_TYPE_REQUEST_MIME_HEADER, acceptType);
+            logNotMapped(context.uri(), context.acceptType());
             httpResponse.setStatus(HttpServletResponse.SC_NOT_FOUND);
 
-            if (CustomErrorPages.existsFor(404)) {
-                requestWrapper.setDelegate(RequestResponseFactory.create(httpRequest));
-                responseWrapper.setDelegate(RequestResponseFactory.create(httpResponse));
-                body.set(CustomErrorPages.getFor(404, requestWrapper, responseWrapper));
-            } else {
-                body.set(String.format(CustomErrorPages.NOT_FOUND));
+            body.set(ErrorPages.get(context, HttpServletResponse.SC_NOT_FOUND));
+        }
+
+        if (body.get() instanceof BodyPublisher && httpRequest.isAsyncSupported()) {
+            if (httpResponse.getContentType() == null) {
+                httpResponse.setContentType("text/html; charset=utf-8");
             }
+            AsyncContext asyncContext = httpRequest.isAsyncStarted()
+                    ? httpRequest.getAsyncContext()
+                    : httpRequest.startAsync();
+            PublisherWriter.start(asyncContext,
+                                  (BodyPublisher) body.get(),
+                                  GzipUtils.wantsGzip(httpRequest, httpResponse));
+            return true;
         }
 
         if (body.isSet()) {
-            body.serializeTo(httpResponse, serializerChain, httpRequest);
+            body.serializeTo(httpResponse, serializers, httpRequest);
 
         } else if (chain != null) {
             chain.doFilter(httpRequest, httpResponse);
         }
+        return false;
+    }
+
+    private static Object await(CompletionStage<?> stage) throws Exception {
+        try {
+            return stage.toCompletableFuture().join();
+        } catch (CompletionException | CancellationException e) {
+            throw unwrap(e);
+        }
+    }
+
+    private static Exception unwrap(Throwable failure) {
+        Throwable cause = failure;
+        while (cause instanceof CompletionException && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause instanceof Exception ? (Exception) cause : new ExecutionException(cause);
+    }
+
+    /**
+     * Handles a request for a path that no route nor filter is mapped for, e.g. scanner traffic, without creating
+     * the request and response wrappers. The 404 page is written as pre-encoded bytes.
+     *
+     * @return true if the request was handled, false if it has to go through the custom 404 page
+     */
+    private boolean consumeUnmapped(ServletRequest servletRequest,
+                                    HttpServletResponse httpResponse,
+                                    FilterChain chain,
+                                    RoutePipeline pipeline,
+                                    String uri,
+                                    String acceptType) throws IOException, ServletException {
+
+        if (hasOtherHandlers && servletRequest instanceof HttpRequestWrapper) {
+            ((HttpRequestWrapper) servletRequest).notConsumed(true);
+            return true;
+        }
+
+        if (externalContainer) {
+            if (chain != null) {
+                chain.doFilter(servletRequest, httpResponse);
+            }
+            return true;
+        }
+
+        EncodedPage page = pipeline.getErrorPages().encodedPageFor(HttpServletResponse.SC_NOT_FOUND);
+        if (page == null) {
+            return false;
+        }
+
+        logNotMapped(uri, acceptType);
+        httpResponse.setStatus(HttpServletResponse.SC_NOT_FOUND);
+        write(httpResponse, page);
+        return true;
+    }
+
+    /**
+     * Answers a request with a content length larger than the limit before any of the body is read, and closes the
+     * connection instead of reading the rest of the body
+     */
+    private static void rejectTooLarge(HttpServletResponse httpResponse, RoutePipeline pipeline) throws IOException {
+        EncodedPage page = pipeline.getErrorPages().encodedPageFor(BodyLimitException.PAYLOAD_TOO_LARGE);
+
+        httpResponse.setStatus(BodyLimitException.PAYLOAD_TOO_LARGE);
+        httpResponse.setHeader("Connection", "close");
+        write(httpResponse, page != null ? page : CustomErrorPages.defaultEncodedPageFor(httpResponse.getStatus()));
+    }
+
+    /**
+     * Writes an error page that is already encoded, for requests answered without a route context
+     */
+    private static void write(HttpServletResponse httpResponse, EncodedPage page) throws IOException {
+        httpResponse.setContentType(page.contentType() != null ? page.contentType() : "text/html; charset=utf-8");
+        httpResponse.setContentLength(page.length());
+        page.writeTo(httpResponse.getOutputStream());
+    }
+
+    private void logNotMapped(String uri, String acceptType) {
+        if (!LOG.isInfoEnabled()) {
+            return;
+        }
+
+        long now = System.nanoTime();
+        long last = lastNotMappedLog.get();
+
+        if (now - last >= NOT_MAPPED_LOG_INTERVAL && lastNotMappedLog.compareAndSet(last, now)) {
+            long notLogged = notMappedNotLogged.sumThenReset();
+
+            if (notLogged > 0) {
+                LOG.info("The requested route [{}] has not been mapped in Spark for {}: [{}] "
+                                 + "({} more not mapped requests since last logged)",
+                         uri, ACCEPT_TYPE_REQUEST_MIME_HEADER, acceptType, notLogged);
+            } else {
+                LOG.info("The requested route [{}] has not been mapped in Spark for {}: [{}]",
+                         uri, ACCEPT_TYPE_REQUEST_MIME_HEADER, acceptType);
+            }
+        } else {
+            notMappedNotLogged.increment();
+        }
     }
 
     private String getHttpMethodFrom(HttpServletRequest httpRequest) {
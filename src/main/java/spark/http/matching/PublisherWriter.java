@@ -0,0 +1,348 @@
+/*
+ * Copyright 2016 - Per Wendel
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spark.http.matching;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+
+import spark.BodyPublisher;
+
+/**
+ * Writes a body publisher with non-blocking IO. The next chunk is only asked for when the output can take more and
+ * the previous chunk has been written, no thread waits for either the publisher or the client.
+ * When the response wants GZIP, each chunk is compressed before it is written, since the output only takes one
+ * write at a time and a {@link java.util.zip.GZIPOutputStream} may write several times per chunk.
+ *
+ * @author Per Wendel
+ */
+final class PublisherWriter implements WriteListener, AsyncListener {
+
+    private static final org.slf4j.Logger LOG = org.slf4j.LoggerFactory.getLogger(PublisherWriter.class);
+
+    private final AsyncContext asyncContext;
+    private final BodyPublisher publisher;
+    private final GzipEncoder gzip;
+
+    private ServletOutputStream out;
+    private CompletableFuture<ByteBuffer> next;
+    private ByteBuffer pending;
+    private byte[] copyBuffer;
+    private boolean waiting;
+    private boolean unflushed;
+    private boolean ending;
+    private boolean done;
+
+    private PublisherWriter(AsyncContext asyncContext, BodyPublisher publisher, boolean gzip) {
+        this.asyncContext = asyncContext;
+        this.publisher = publisher;
+        this.gzip = gzip ? new GzipEncoder() : null;
+    }
+
+    /**
+     * Starts writing the body, the response is completed when it's written
+     *
+     * @param gzip true to compress the body
+     */
+    static void start(AsyncContext asyncContext, BodyPublisher publisher, boolean gzip) throws IOException {
+        PublisherWriter writer = new PublisherWriter(asyncContext, publisher, gzip);
+        asyncContext.setTimeout(0);
+        asyncContext.addListener(writer);
+
+        synchronized (writer) {
+            writer.out = asyncContext.getResponse().getOutputStream();
+            writer.out.setWriteListener(writer);
+        }
+    }
+
+    @Override
+    public synchronized void onWritePossible() throws IOException {
+        while (!done && !waiting && out.isReady()) {
+            if (pending != null) {
+                write(pending);
+                pending = null;
+                unflushed = true;
+                continue;
+            }
+
+            if (ending) {
+                finish();
+                return;
+            }
+
+            if (next == null) {
+                next = publisher.next().toCompletableFuture();
+            }
+
+            if (next.isDone()) {
+                // Taken right away rather than in a callback so that a publisher with ready chunks doesn't recurse
+                CompletableFuture<ByteBuffer> ready = next;
+                next = null;
+                try {
+                    accept(ready.join());
+                } catch (CompletionException e) {
+                    failed(e.getCause());
+                }
+            } else if (gzip != null && gzip.hasUnflushed()) {
+                // Compressed data held back by the deflater is written first, then flushed below
+                pending = gzip.flush();
+            } else {
+                waiting = true;
+                if (unflushed) {
+                    // Send what was written while the publisher produces the next chunk
+                    unflushed = false;
+                    out.flush();
+                }
+                CompletableFuture<ByteBuffer> later = next;
+                next = null;
+                later.whenComplete(this::resume);
+            }
+        }
+    }
+
+    private void resume(ByteBuffer chunk, Throwable failure) {
+        synchronized (this) {
+            waiting = false;
+            if (failure != null) {
+                failed(failure instanceof CompletionException ? failure.getCause() : failure);
+                return;
+            }
+            accept(chunk);
+        }
+        try {
+            onWritePossible();
+        } catch (IOException | RuntimeException e) {
+            onError(e);
+        }
+    }
+
+    private void accept(ByteBuffer chunk) {
+        if (gzip == null) {
+            if (chunk == null) {
+                finish();
+            } else {
+                pending = chunk;
+            }
+        } else if (chunk == null) {
+            // The rest of the compressed data and the trailer are written before the response is completed
+            pending = gzip.finish();
+            ending = true;
+        } else {
+            pending = gzip.encode(chunk);
+        }
+    }
+
+    private void write(ByteBuffer chunk) throws IOException {
+        if (chunk.hasArray()) {
+            out.write(chunk.array(), chunk.arrayOffset() + chunk.position(), chunk.remaining());
+        } else {
+            int length = chunk.remaining();
+            if (copyBuffer == null || copyBuffer.length < length) {
+                copyBuffer = new byte[length];
+            }
+            chunk.get(copyBuffer, 0, length);
+            out.write(copyBuffer, 0, length);
+        }
+    }
+
+    private void finish() {
+        done = true;
+        release();
+        asyncContext.complete();
+    }
+
+    private void failed(Throwable failure) {
+        // The status and headers are most likely sent, all that can be done is to end the response
+        LOG.warn("The body publisher failed, the response is incomplete", failure);
+        done = true;
+        release();
+        publisher.cancel();
+        asyncContext.complete();
+    }
+
+    private void release() {
+        if (gzip != null) {
+            gzip.end();
+        }
+    }
+
+    @Override
+    public void onError(Throwable t) {
+        LOG.debug("Writing the body failed", t);
+        cancel();
+    }
+
+    private synchronized void cancel() {
+        if (!done) {
+            done = true;
+            release();
+            publisher.cancel();
+            try {
+                asyncContext.complete();
+            } catch (IllegalStateException e) {
+                // Already completed by the container
+            }
+        }
+    }
+
+    @Override
+    public void onComplete(AsyncEvent event) {
+        cancel();
+    }
+
+    @Override
+    public void onTimeout(AsyncEvent event) {
+        cancel();
+    }
+
+    @Override
+    public void onError(AsyncEvent event) {
+        cancel();
+    }
+
+    @Override
+    public void onStartAsync(AsyncEvent event) {
+        //
+    }
+
+    /**
+     * Compresses chunks to the GZIP format. Each call returns a new buffer, since the previous one may still be
+     * being written.
+     */
+    private static final class GzipEncoder {
+
+        private static final byte[] HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0};
+        private static final int TRAILER_LENGTH = 8;
+
+        private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        private final CRC32 crc = new CRC32();
+        private final byte[] buffer = new byte[8192];
+
+        private byte[] output = new byte[0];
+        private int length;
+        private boolean headerWritten;
+        private boolean unflushed;
+
+        ByteBuffer encode(ByteBuffer chunk) {
+            byte[] input;
+            int offset;
+            int inputLength = chunk.remaining();
+
+            if (chunk.hasArray()) {
+                input = chunk.array();
+                offset = chunk.arrayOffset() + chunk.position();
+            } else {
+                input = new byte[inputLength];
+                offset = 0;
+                chunk.duplicate().get(input);
+            }
+
+            start();
+            crc.update(input, offset, inputLength);
+            deflater.setInput(input, offset, inputLength);
+            while (!deflater.needsInput()) {
+                deflate(Deflater.NO_FLUSH);
+            }
+            unflushed = true;
+            return take();
+        }
+
+        boolean hasUnflushed() {
+            return unflushed;
+        }
+
+        ByteBuffer flush() {
+            start();
+            while (deflate(Deflater.SYNC_FLUSH) == buffer.length) {
+                // until the deflater has nothing more to give
+            }
+            unflushed = false;
+            return take();
+        }
+
+        ByteBuffer finish() {
+            start();
+            deflater.finish();
+            while (!deflater.finished()) {
+                deflate(Deflater.NO_FLUSH);
+            }
+            append(trailer(), TRAILER_LENGTH);
+            unflushed = false;
+            return take();
+        }
+
+        void end() {
+            deflater.end();
+        }
+
+        private void start() {
+            if (!headerWritten) {
+                headerWritten = true;
+                append(HEADER, HEADER.length);
+            }
+        }
+
+        private int deflate(int flush) {
+            int deflated = deflater.deflate(buffer, 0, buffer.length, flush);
+            append(buffer, deflated);
+            return deflated;
+        }
+
+        private byte[] trailer() {
+            byte[] trailer = new byte[TRAILER_LENGTH];
+            writeInt(trailer, 0, (int) crc.getValue());
+            writeInt(trailer, 4, (int) deflater.getBytesRead());
+            return trailer;
+        }
+
+        private static void writeInt(byte[] bytes, int offset, int value) {
+            // Little endian, as GZIP wants it
+            for (int i = 0; i < 4; i++) {
+                bytes[offset + i] = (byte) (value >>> (8 * i));
+            }
+        }
+
+        private void append(byte[] bytes, int count) {
+            if (length + count > output.length) {
+                output = Arrays.copyOf(output, Math.max(length + count, output.length * 2));
+            }
+            System.arraycopy(bytes, 0, output, length, count);
+            length += count;
+        }
+
+        private ByteBuffer take() {
+            if (length == 0) {
+                return null;
+            }
+            ByteBuffer taken = ByteBuffer.wrap(output, 0, length);
+            output = new byte[0];
+            length = 0;
+            return taken;
+        }
+    }
+
+}
@@ -16,8 +16,11 @@
  */
 package spark.http.matching;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletionStage;
 
 import javax.servlet.http.HttpServletRequest;
 
@@ -51,6 +54,12 @@ final class RequestWrapper extends Request {
         Access.changeMatch(delegate, match);
     }
 
+    void routeReturned(boolean resumedLater) {
+        if (delegate != null) {
+            Access.routeReturned(delegate, resumedLater);
+        }
+    }
+
     @Override
     public String requestMethod() {
         return delegate.requestMethod();
@@ -96,6 +105,16 @@ final class RequestWrapper extends Request {
         return delegate.bodyAsBytes();
     }
 
+    @Override
+    public CompletionStage<byte[]> bodyAsync() {
+        return delegate.bodyAsync();
+    }
+
+    @Override
+    public void bodyTo(Path target) throws IOException {
+        delegate.bodyTo(target);
+    }
+
     @Override
     public int contentLength() {
         return delegate.contentLength();
@@ -121,6 +140,11 @@ final class RequestWrapper extends Request {
         return delegate.params(param);
     }
 
+    @Override
+    public <T> T params(String param, Class<T> type) {
+        return delegate.params(param, type);
+    }
+
     @Override
     public String[] splat() {
         return delegate.splat();
@@ -16,14 +16,21 @@
  */
 package spark.http.matching;
 
+import java.util.concurrent.CompletionStage;
+
 import javax.servlet.http.HttpServletRequest;
 
+import spark.RequestResponseFactory;
 import spark.Response;
 import spark.route.*;
 import spark.route.Routes;
+import spark.routematch.RouteMatch;
+import spark.routematch.RoutePipeline;
 
 /**
  * Holds the parameters needed in the Before filters, Routes and After filters execution.
+ * One context is created per request and the same request and response wrappers are handed to every filter and
+ * route, the request is only re-targeted to each match.
  */
 final class RouteContext {
 
@@ -43,6 +50,8 @@ final class RouteContext {
     private ResponseWrapper responseWrapper;
     private Response response;
     private HttpMethod httpMethod;
+    private RoutePipeline pipeline;
+    private CompletionStage<?> pendingResult;
 
     private RouteContext() {
         // hidden
@@ -97,6 +106,11 @@ final class RouteContext {
         return this;
     }
 
+    public RouteContext withPipeline(RoutePipeline pipeline) {
+        this.pipeline = pipeline;
+        return this;
+    }
+
     public HttpServletRequest httpRequest() {
         return httpRequest;
     }
@@ -129,4 +143,33 @@ final class RouteContext {
         return httpMethod;
     }
 
+    public RoutePipeline pipeline() {
+        return pipeline;
+    }
+
+    /**
+     * @return the stage returned by an asynchronous route, already mapped through its render method, or null
+     */
+    CompletionStage<?> pendingResult() {
+        return pendingResult;
+    }
+
+    void pendingResult(CompletionStage<?> pendingResult) {
+        this.pendingResult = pendingResult;
+    }
+
+    /**
+     * Points the request wrapper at a filter or route match. The request is created for the first match and
+     * re-targeted for the following ones, its params are only matched again when they are used.
+     *
+     * @param match the filter or route match about to be executed
+     */
+    void retarget(RouteMatch match) {
+        if (requestWrapper.getDelegate() == null) {
+            requestWrapper.setDelegate(RequestResponseFactory.create(match, httpRequest));
+        } else {
+            requestWrapper.changeMatch(match);
+        }
+    }
+
 }
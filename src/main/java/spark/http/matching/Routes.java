@@ -16,8 +16,12 @@
  */
 package spark.http.matching;
 
-import spark.Request;
-import spark.RequestResponseFactory;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+
+import spark.Access;
+import spark.Records;
+import spark.Response;
 import spark.RouteImpl;
 import spark.route.HttpMethod;
 import spark.routematch.RouteMatch;
@@ -27,55 +31,87 @@ import spark.routematch.RouteMatch;
  */
 final class Routes {
 
+    static final String ALLOW_HEADER = "Allow";
+
     static void execute(RouteContext context) throws Exception {
 
         Object content = context.body().get();
 
-        RouteMatch match = context.routeMatcher().find(context.httpMethod(), context.uri(), context.acceptType());
+        RouteMatch match = context.pipeline().getRoute();
 
+        // HEAD requests are matched to the GET route if no HEAD route is mapped
         Object target = null;
         if (match != null) {
             target = match.getTarget();
-        } else if (context.httpMethod() == HttpMethod.head && context.body().notSet()) {
-            // See if get is mapped to provide default head mapping
-            content =
-                    context.routeMatcher().find(HttpMethod.get, context.uri(), context.acceptType())
-                            != null ? "" : null;
+        } else if (context.httpMethod() == HttpMethod.options
+                && context.pipeline().getAllow() != null
+                && context.body().notSet()) {
+            // Answer OPTIONS for paths that have routes mapped for other methods
+            context.response().header(ALLOW_HEADER, context.pipeline().getAllow());
+            content = "";
         }
 
-        if (target != null) {
-            Object result = null;
+        if (target instanceof RouteImpl) {
+            RouteImpl route = ((RouteImpl) target);
 
-            if (target instanceof RouteImpl) {
-                RouteImpl route = ((RouteImpl) target);
+            context.retarget(match);
 
-                if (context.requestWrapper().getDelegate() == null) {
-                    Request request = RequestResponseFactory.create(match, context.httpRequest());
-                    context.requestWrapper().setDelegate(request);
-                } else {
-                    context.requestWrapper().changeMatch(match);
-                }
+            Object element = route.handle(context.requestWrapper(), context.responseWrapper());
 
-                context.responseWrapper().setDelegate(context.response());
-
-                Object element = route.handle(context.requestWrapper(), context.responseWrapper());
-                result = route.render(element);
+            if (element instanceof CompletionStage) {
+                // Rendered when the stage completes, the request is resumed with the result
+                context.pendingResult(((CompletionStage<?>) element)
+                                              .thenApply(value -> renderLater(route, value, context.response())));
+            } else {
+                content = result(context, render(route, element, context.response()), content);
             }
+        }
+
+        context.body().set(content);
+    }
+
+    /**
+     * Sets the body to the rendered result of an asynchronous route.
+     */
+    static void complete(RouteContext context, Object result) {
+        context.body().set(result(context, result, context.body().get()));
+    }
 
-            if (result != null) {
-                content = result;
+    private static Object result(RouteContext context, Object result, Object content) {
+        if (result == null) {
+            return content;
+        }
 
-                if (content instanceof String) {
-                    String contentStr = (String) content;
+        if (result instanceof String) {
+            String contentStr = (String) result;
 
-                    if (!contentStr.equals("")) {
-                        context.responseWrapper().body(contentStr);
-                    }
-                }
+            if (!contentStr.equals("")) {
+                context.responseWrapper().body(contentStr);
             }
         }
+        return result;
+    }
 
-        context.body().set(content);
+    /**
+     * Renders the result of a route. Streams and iterators of records are rendered one record at a time when they are
+     * written.
+     */
+    private static Object render(RouteImpl route, Object element, Response response) throws Exception {
+        Records records = Access.records(element, route, response);
+        if (records != null) {
+            return records;
+        }
+        return route.render(element);
+    }
+
+    private static Object renderLater(RouteImpl route, Object element, Response response) {
+        try {
+            return render(route, element, response);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new CompletionException(e);
+        }
     }
 
 }
@@ -0,0 +1,574 @@
+/*
+ * Copyright 2016 - Per Wendel
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spark.requestbody;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * A buffered request body that can be read any number of times. Bodies up to the memory threshold are kept in an
+ * array sized from the content length when it is known, larger ones are written to a temporary file which is
+ * memory mapped to be read back. The temporary file is deleted once the buffer is closed and the streams reading it
+ * have been read to the end or closed, and it can't be read any more after the buffer has been closed.
+ *
+ * @author Per Wendel
+ */
+public final class BodyBuffer implements Closeable {
+
+    private static final int CHUNK_SIZE = 8192;
+
+    private final byte[] bytes;
+    private final int length;
+    private long reserved;
+
+    private final Path file;
+    private final long fileSize;
+    private MappedByteBuffer mapped;
+    private int readers;
+    private boolean closed;
+
+    private BodyBuffer(byte[] bytes, int length, long reserved, Path file, long fileSize) {
+        this.bytes = bytes;
+        this.length = length;
+        this.reserved = reserved;
+        this.file = file;
+        this.fileSize = fileSize;
+    }
+
+    /**
+     * @param bytes the body
+     * @return a buffer holding the body
+     */
+    public static BodyBuffer of(byte[] bytes) {
+        return new BodyBuffer(bytes, bytes.length, 0, null, 0);
+    }
+
+    /**
+     * Reads a whole body
+     *
+     * @param in            the body input stream
+     * @param contentLength the content length or -1 if unknown
+     * @param configuration the buffering configuration
+     * @return a buffer holding the body
+     * @throws IOException in case of IO error
+     */
+    public static BodyBuffer read(InputStream in,
+                                  long contentLength,
+                                  RequestBodyConfiguration configuration) throws IOException {
+        return read(in, contentLength, configuration, -1);
+    }
+
+    /**
+     * Reads a whole body that may not be larger than a limit. The memory the body is kept in is reserved from the
+     * {@link BodyMemoryBudget}, waiting for it if the budget is used up, until the buffer is closed.
+     *
+     * @param in            the body input stream
+     * @param contentLength the content length or -1 if unknown
+     * @param configuration the buffering configuration
+     * @param maxSize       the largest body accepted or -1 for no limit
+     * @return a buffer holding the body
+     * @throws BodyLimitException if the body is larger than the limit or the budget is used up
+     * @throws IOException        in case of IO error
+     */
+    public static BodyBuffer read(InputStream in,
+                                  long contentLength,
+                                  RequestBodyConfiguration configuration,
+                                  long maxSize) throws IOException {
+
+        Writer writer = new Writer(contentLength, configuration, maxSize, true);
+        try {
+            writer.readFrom(in);
+            return writer.finish();
+        } catch (IOException | RuntimeException e) {
+            writer.discard();
+            throw e;
+        }
+    }
+
+    /**
+     * Starts a body that is handed over in chunks, e.g. by a non-blocking read, kept in memory or written to a
+     * temporary file as by {@link #read(InputStream, long, RequestBodyConfiguration, long)}. The memory is reserved
+     * from the {@link BodyMemoryBudget} without waiting, since that would block a container thread.
+     *
+     * @param contentLength the content length or -1 if unknown
+     * @param configuration the buffering configuration
+     * @param maxSize       the largest body accepted or -1 for no limit
+     * @return a writer the chunks are written to
+     * @throws BodyLimitException if the content length is larger than the limit or the budget is used up
+     * @throws IOException        in case of IO error
+     */
+    public static Writer writer(long contentLength,
+                                RequestBodyConfiguration configuration,
+                                long maxSize) throws IOException {
+        return new Writer(contentLength, configuration, maxSize, false);
+    }
+
+    /**
+     * Writes a body from an input stream to a file without buffering it
+     *
+     * @param in     the body input stream
+     * @param target the file, replaced if it exists
+     * @throws IOException in case of IO error
+     */
+    public static void transfer(InputStream in, Path target) throws IOException {
+        try (FileChannel out = FileChannel.open(target,
+                                                StandardOpenOption.CREATE,
+                                                StandardOpenOption.WRITE,
+                                                StandardOpenOption.TRUNCATE_EXISTING)) {
+            out.transferFrom(Channels.newChannel(in), 0, Long.MAX_VALUE);
+        }
+    }
+
+    /**
+     * @return the size of the body in bytes
+     */
+    public long size() {
+        return file != null ? fileSize : length;
+    }
+
+    /**
+     * @return true if the body was written to a temporary file
+     */
+    public boolean isSpilled() {
+        return file != null;
+    }
+
+    /**
+     * @return a new stream reading the body from the start
+     * @throws IOException in case of IO error
+     */
+    public InputStream newInputStream() throws IOException {
+        if (file == null) {
+            return new ByteArrayInputStream(bytes, 0, length);
+        }
+        acquire();
+        try {
+            // Too large to map in one buffer otherwise
+            return new FileReaderStream(fileSize > Integer.MAX_VALUE
+                                                ? Files.newInputStream(file)
+                                                : new ByteBufferInputStream(mapped()));
+        } catch (IOException | RuntimeException e) {
+            readerDone();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the body as an array. A body kept in memory in an exactly sized array is returned as is, that array is
+     * shared by all calls and must not be modified. A body read back from its temporary file reserves its size from
+     * the {@link BodyMemoryBudget}, waiting for it if the budget is used up, until the buffer is closed.
+     *
+     * @return the body
+     * @throws BodyLimitException if the body is read back from its file and the budget is used up
+     * @throws IOException        in case of IO error
+     */
+    public byte[] toByteArray() throws IOException {
+        if (file != null) {
+            return readFile();
+        }
+        return length == bytes.length ? bytes : Arrays.copyOf(bytes, length);
+    }
+
+    private byte[] readFile() throws IOException {
+        if (fileSize > Integer.MAX_VALUE - 8) {
+            throw BodyLimitException.tooLarge(Integer.MAX_VALUE - 8);
+        }
+        BodyMemoryBudget budget = BodyMemoryBudget.getInstance();
+        long read = budget.reserve(fileSize, true);
+        boolean kept = false;
+        try {
+            acquire();
+            try {
+                byte[] body = Files.readAllBytes(file);
+                synchronized (this) {
+                    // Released right away if the request was completed meanwhile
+                    kept = !closed;
+                    if (kept) {
+                        reserved += read;
+                    }
+                }
+                return body;
+            } finally {
+                readerDone();
+            }
+        } finally {
+            if (!kept) {
+                budget.release(read);
+            }
+        }
+    }
+
+    /**
+     * Writes the body to a file, with a channel transfer if it was written to a temporary file
+     *
+     * @param target the file, replaced if it exists
+     * @throws IOException in case of IO error
+     */
+    public void transferTo(Path target) throws IOException {
+        try (FileChannel out = FileChannel.open(target,
+                                                StandardOpenOption.CREATE,
+                                                StandardOpenOption.WRITE,
+                                                StandardOpenOption.TRUNCATE_EXISTING)) {
+            if (file == null) {
+                ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, length);
+                while (buffer.hasRemaining()) {
+                    out.write(buffer);
+                }
+                return;
+            }
+            acquire();
+            try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+                long position = 0;
+                while (position < fileSize) {
+                    position += in.transferTo(position, fileSize - position, out);
+                }
+            } finally {
+                readerDone();
+            }
+        }
+    }
+
+    private synchronized ByteBuffer mapped() throws IOException {
+        if (mapped == null) {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+            }
+        }
+        return mapped.duplicate();
+    }
+
+    /**
+     * Releases the memory reserved for the body and deletes the temporary file, if any, or leaves it to the last
+     * stream still reading it
+     */
+    @Override
+    public void close() throws IOException {
+        boolean delete;
+        synchronized (this) {
+            BodyMemoryBudget.getInstance().release(reserved);
+            reserved = 0;
+            delete = file != null && !closed && readers == 0;
+            closed = true;
+        }
+        if (delete) {
+            delete();
+        }
+    }
+
+    private synchronized void acquire() throws IOException {
+        if (closed) {
+            throw new IOException("The request body has been released");
+        }
+        readers++;
+    }
+
+    private void readerDone() throws IOException {
+        boolean delete;
+        synchronized (this) {
+            delete = --readers == 0 && closed;
+        }
+        if (delete) {
+            delete();
+        }
+    }
+
+    private void delete() throws IOException {
+        synchronized (this) {
+            // Unmapped when the buffer is garbage collected
+            mapped = null;
+        }
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            // Windows doesn't delete a file that is still mapped
+            file.toFile().deleteOnExit();
+        }
+    }
+
+    /**
+     * Collects a body kept in memory up to the memory threshold, in an array sized from the content length when it
+     * is known, and written to a temporary file beyond it. The memory is reserved from the {@link BodyMemoryBudget}
+     * as the array grows, and released when the body is written to the file.
+     */
+    public static final class Writer {
+
+        private final RequestBodyConfiguration configuration;
+        private final long contentLength;
+        private final long maxSize;
+        private final long threshold;
+        private final boolean waitForBudget;
+        private final BodyMemoryBudget budget = BodyMemoryBudget.getInstance();
+
+        private byte[] buffer;
+        private int length;
+        private long reserved;
+
+        private Path file;
+        private OutputStream out;
+        private long size;
+
+        private Writer(long contentLength,
+                       RequestBodyConfiguration configuration,
+                       long maxSize,
+                       boolean waitForBudget) throws IOException {
+
+            if (maxSize >= 0 && contentLength > maxSize) {
+                throw BodyLimitException.tooLarge(maxSize);
+            }
+            this.configuration = configuration;
+            this.contentLength = contentLength;
+            this.maxSize = maxSize;
+            this.threshold = Math.min(configuration.memoryThreshold(), Integer.MAX_VALUE - 8);
+            this.waitForBudget = waitForBudget;
+
+            if (contentLength > threshold) {
+                buffer = new byte[0];
+                spill();
+                return;
+            }
+            // A blocking read allocates what the client announced, chunks handed over grow the array as they come
+            int initialSize = contentLength >= 0
+                    ? (int) (waitForBudget ? contentLength : Math.min(contentLength, CHUNK_SIZE))
+                    : (int) Math.min(CHUNK_SIZE, threshold);
+            reserved = budget.reserve(initialSize, waitForBudget);
+            buffer = new byte[initialSize];
+        }
+
+        /**
+         * Writes a chunk of the body
+         *
+         * @param bytes  the chunk
+         * @param offset the offset of the chunk in the array
+         * @param count  the number of bytes
+         * @throws BodyLimitException if the body gets larger than the limit or the budget is used up
+         * @throws IOException        in case of IO error
+         */
+        public void write(byte[] bytes, int offset, int count) throws IOException {
+            grow(count);
+            if (out != null) {
+                out.write(bytes, offset, count);
+            } else {
+                System.arraycopy(bytes, offset, buffer, length, count);
+                length += count;
+            }
+        }
+
+        /**
+         * Reads the rest of the body from a stream, right into the array while the body is kept in memory
+         */
+        private void readFrom(InputStream in) throws IOException {
+            byte[] chunk = null;
+            while (true) {
+                if (out != null) {
+                    if (chunk == null) {
+                        chunk = new byte[CHUNK_SIZE];
+                    }
+                    int read = in.read(chunk);
+                    if (read == -1) {
+                        return;
+                    }
+                    write(chunk, 0, read);
+                } else if (length == buffer.length) {
+                    // Full, either the content length was right or the length is unknown
+                    int next = in.read();
+                    if (next == -1) {
+                        return;
+                    }
+                    write(new byte[] {(byte) next}, 0, 1);
+                } else {
+                    int read = in.read(buffer, length, buffer.length - length);
+                    if (read == -1) {
+                        return;
+                    }
+                    size += read;
+                    length += read;
+                    checkLimit();
+                }
+            }
+        }
+
+        /**
+         * @return a buffer holding the body written
+         * @throws IOException in case of IO error
+         */
+        public BodyBuffer finish() throws IOException {
+            if (out != null) {
+                out.close();
+                out = null;
+                BodyBuffer spilled = new BodyBuffer(null, 0, 0, file, size);
+                file = null;
+                return spilled;
+            }
+            BodyBuffer kept = new BodyBuffer(buffer, length, reserved, null, 0);
+            reserved = 0;
+            return kept;
+        }
+
+        /**
+         * Drops a body that won't be finished, releasing its memory and deleting its temporary file
+         */
+        public void discard() {
+            budget.release(reserved);
+            reserved = 0;
+            buffer = null;
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    // deleted anyway
+                }
+                out = null;
+            }
+            if (file != null) {
+                try {
+                    Files.deleteIfExists(file);
+                } catch (IOException e) {
+                    file.toFile().deleteOnExit();
+                }
+                file = null;
+            }
+        }
+
+        /**
+         * Makes room for a number of bytes more, growing the array or writing the body to a file
+         */
+        private void grow(int count) throws IOException {
+            size += count;
+            checkLimit();
+            if (out != null || size <= buffer.length) {
+                return;
+            }
+            if (size > threshold) {
+                spill();
+                return;
+            }
+            long limit = contentLength >= size ? contentLength : threshold;
+            int grown = (int) Math.min(Math.max(Math.max(buffer.length * 2L, size), CHUNK_SIZE), limit);
+            reserved += budget.reserve(grown - buffer.length, waitForBudget);
+            buffer = Arrays.copyOf(buffer, grown);
+        }
+
+        private void checkLimit() throws BodyLimitException {
+            if (maxSize >= 0 && size > maxSize) {
+                throw BodyLimitException.tooLarge(maxSize);
+            }
+        }
+
+        private void spill() throws IOException {
+            Path directory = configuration.tempDirectory();
+            file = directory != null
+                    ? Files.createTempFile(directory, "spark-body", ".tmp")
+                    : Files.createTempFile("spark-body", ".tmp");
+            out = Files.newOutputStream(file);
+            out.write(buffer, 0, length);
+            buffer = null;
+            length = 0;
+            budget.release(reserved);
+            reserved = 0;
+        }
+    }
+
+    /**
+     * A stream reading the temporary file, done with it at the end of the file or when closed
+     */
+    private final class FileReaderStream extends FilterInputStream {
+
+        private boolean done;
+
+        FileReaderStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            return ended(super.read());
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return ended(super.read(b, off, len));
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                done();
+            }
+        }
+
+        private int ended(int read) throws IOException {
+            if (read == -1) {
+                done();
+            }
+            return read;
+        }
+
+        private void done() throws IOException {
+            if (!done) {
+                done = true;
+                readerDone();
+            }
+        }
+    }
+
+    private static final class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int read = Math.min(len, buffer.remaining());
+            buffer.get(b, off, read);
+            return read;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+
+}
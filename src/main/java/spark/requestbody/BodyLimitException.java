@@ -0,0 +1,68 @@
+/*
+ * Copyright 2016 - Per Wendel
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spark.requestbody;
+
+import java.io.IOException;
+
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Thrown when reading a request body that is larger than allowed, or that can't be buffered because the memory
+ * budget for request bodies is used up. The request is answered with the status code of the exception.
+ *
+ * @author Per Wendel
+ */
+public class BodyLimitException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 413, RFC 7231 name, not in the servlet API constants
+     */
+    public static final int PAYLOAD_TOO_LARGE = HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE;
+
+    private final int statusCode;
+
+    private BodyLimitException(int statusCode, String message) {
+        super(message);
+        this.statusCode = statusCode;
+    }
+
+    /**
+     * @param maxSize the limit
+     * @return an exception for a body larger than the limit
+     */
+    public static BodyLimitException tooLarge(long maxSize) {
+        return new BodyLimitException(PAYLOAD_TOO_LARGE,
+                                      "The request body is larger than the limit of " + maxSize + " bytes");
+    }
+
+    /**
+     * @return an exception for a body that can't be buffered because the memory budget is used up
+     */
+    public static BodyLimitException budgetExhausted() {
+        return new BodyLimitException(HttpServletResponse.SC_SERVICE_UNAVAILABLE,
+                                      "The memory budget for request bodies is used up");
+    }
+
+    /**
+     * @return 413 if the body is too large, 503 if the memory budget is used up
+     */
+    public int statusCode() {
+        return statusCode;
+    }
+
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2016 - Per Wendel
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spark.requestbody;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Process wide budget of request body bytes buffered in memory. Buffering a body reserves its size, or each growth
+ * of the buffer when the size isn't known, and the reservation is released when the request is completed.
+ * When the budget is used up a request waits for up to the configured time and is then answered with 503, rather
+ * than concurrent large requests exhausting the heap. Bodies written to temporary files don't count.
+ *
+ * @author Per Wendel
+ */
+public final class BodyMemoryBudget {
+
+    private static final BodyMemoryBudget INSTANCE = new BodyMemoryBudget();
+
+    private long limit = -1;
+    private long maxWaitMillis;
+    private long reserved;
+
+    /**
+     * @return the budget
+     */
+    public static BodyMemoryBudget getInstance() {
+        return INSTANCE;
+    }
+
+    BodyMemoryBudget() {
+        // one per process, separate ones in tests
+    }
+
+    /**
+     * Sets the budget
+     *
+     * @param bytes         the number of bytes that can be buffered at the same time, -1 for no limit
+     * @param maxWaitMillis how long a request waits for bytes to be released when the budget is used up
+     */
+    public synchronized void configure(long bytes, long maxWaitMillis) {
+        this.limit = bytes;
+        this.maxWaitMillis = maxWaitMillis;
+        notifyAll();
+    }
+
+    /**
+     * @return the number of bytes currently reserved
+     */
+    public synchronized long reserved() {
+        return reserved;
+    }
+
+    /**
+     * Reserves bytes
+     *
+     * @param bytes the number of bytes
+     * @param wait  true if the caller can wait for bytes to be released
+     * @return the number of bytes reserved, 0 if there is no budget set
+     * @throws BodyLimitException if the bytes can't be reserved
+     */
+    public synchronized long reserve(long bytes, boolean wait) throws BodyLimitException {
+        if (limit < 0 || bytes <= 0) {
+            return 0;
+        }
+        if (bytes > limit) {
+            throw BodyLimitException.budgetExhausted();
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+
+        while (limit >= 0 && reserved + bytes > limit) {
+            long remaining = deadline - System.nanoTime();
+            if (!wait || remaining <= 0) {
+                throw BodyLimitException.budgetExhausted();
+            }
+            try {
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw BodyLimitException.budgetExhausted();
+            }
+        }
+        reserved += bytes;
+        return bytes;
+    }
+
+    /**
+     * Releases reserved bytes
+     *
+     * @param bytes the number of bytes, as returned by reserve
+     */
+    public synchronized void release(long bytes) {
+        if (bytes > 0) {
+            reserved -= bytes;
+            notifyAll();
+        }
+    }
+
+}
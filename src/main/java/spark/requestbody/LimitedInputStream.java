@@ -0,0 +1,85 @@
+/*
+ * Copyright 2016 - Per Wendel
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spark.requestbody;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * An input stream failing with {@link BodyLimitException} once more bytes than a limit have been read from it, for
+ * bodies sent without a content length or with a wrong one.
+ *
+ * @author Per Wendel
+ */
+public final class LimitedInputStream extends FilterInputStream {
+
+    private final long maxSize;
+    private long count;
+
+    private LimitedInputStream(InputStream in, long maxSize) {
+        super(in);
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @param in      the stream
+     * @param maxSize the number of bytes that can be read, -1 for no limit
+     * @return the limited stream, the stream itself if there is no limit
+     */
+    public static InputStream limit(InputStream in, long maxSize) {
+        return maxSize < 0 ? in : new LimitedInputStream(in, maxSize);
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if (b != -1) {
+            count(1);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int read = super.read(b, off, len);
+        if (read > 0) {
+            count(read);
+        }
+        return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = super.skip(n);
+        count(skipped);
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    private void count(long read) throws BodyLimitException {
+        count += read;
+        if (count > maxSize) {
+            throw BodyLimitException.tooLarge(maxSize);
+        }
+    }
+
+}
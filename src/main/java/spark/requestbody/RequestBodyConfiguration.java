@@ -0,0 +1,122 @@
+/*
+ * Copyright 2016 - Per Wendel
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spark.requestbody;
+
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Holds how request bodies are buffered by the embedded server.
+ *
+ * @author Per Wendel
+ */
+public class RequestBodyConfiguration {
+
+    /**
+     * Bodies larger than this are buffered in a temporary file by default
+     */
+    public static final long DEFAULT_MEMORY_THRESHOLD = 1024 * 1024;
+
+    private volatile long memoryThreshold = DEFAULT_MEMORY_THRESHOLD;
+    private volatile Path tempDirectory;
+    private volatile boolean replayable = true;
+    private volatile long maxSize = -1;
+    private final Map<String, Long> routeMaxSizes = new ConcurrentHashMap<>();
+
+    public long memoryThreshold() {
+        return memoryThreshold;
+    }
+
+    /**
+     * Sets the size above which a buffered body is written to a temporary file instead of kept in memory
+     *
+     * @param bytes the threshold in bytes
+     */
+    public void memoryThreshold(long bytes) {
+        if (bytes < 0) {
+            throw new IllegalArgumentException("The memory threshold can't be negative");
+        }
+        this.memoryThreshold = bytes;
+    }
+
+    public Path tempDirectory() {
+        return tempDirectory;
+    }
+
+    /**
+     * Sets the directory of the temporary files, the default temporary directory if not set
+     *
+     * @param directory the directory
+     */
+    public void tempDirectory(Path directory) {
+        this.tempDirectory = directory;
+    }
+
+    public boolean replayable() {
+        return replayable;
+    }
+
+    /**
+     * Sets if the raw request input stream can be read more than once. If it can the body is buffered the first
+     * time it is read, otherwise the input stream is passed through and only read once.
+     * {@link spark.Request#body()} can be called any number of times either way.
+     *
+     * @param replayable true to buffer the body
+     */
+    public void replayable(boolean replayable) {
+        this.replayable = replayable;
+    }
+
+    public long maxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Sets the largest body accepted, larger requests are answered with 413 Payload Too Large
+     *
+     * @param bytes the limit in bytes, -1 for no limit
+     */
+    public void maxSize(long bytes) {
+        this.maxSize = bytes < 0 ? -1 : bytes;
+    }
+
+    /**
+     * Sets the largest body accepted by the routes mapped for a path, overriding the global limit
+     *
+     * @param path  the path the routes are mapped for, e.g. "/upload/:name"
+     * @param bytes the limit in bytes, -1 for no limit
+     */
+    public void maxSize(String path, long bytes) {
+        routeMaxSizes.put(path, bytes < 0 ? -1 : bytes);
+    }
+
+    /**
+     * @param path the path a route is mapped for, null if no route matched
+     * @return the largest body accepted for the path, -1 for no limit
+     */
+    public long maxSizeFor(String path) {
+        if (path != null && !routeMaxSizes.isEmpty()) {
+            Long routeMaxSize = routeMaxSizes.get(path);
+            if (routeMaxSize != null) {
+                return routeMaxSize;
+            }
+        }
+        return maxSize;
+    }
+
+}
@@ -18,6 +18,8 @@
 package spark.resource;
 
 import java.net.MalformedURLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -32,9 +34,20 @@ import spark.utils.Assert;
 public class ClassPathResourceHandler extends AbstractResourceHandler {
     private static final Logger LOG = LoggerFactory.getLogger(ClassPathResourceHandler.class);
 
+    // The class path doesn't change, so paths that aren't found are remembered, the least recently requested one
+    // is forgotten when full
+    private static final int MAX_MISSING_PATHS = 1024;
+
     private final String baseResource;
     private String welcomeFile;
 
+    private final Map<String, Boolean> missingPaths = new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > MAX_MISSING_PATHS;
+        }
+    };
+
     /**
      * Constructor
      *
@@ -63,6 +76,15 @@ public class ClassPathResourceHandler extends AbstractResourceHandler {
             throw new MalformedURLException(path);
         }
 
+        synchronized (missingPaths) {
+            // Looked up with get() to move it to the end of the access order
+            if (missingPaths.get(path) != null) {
+                return null;
+            }
+        }
+
+        String requestedPath = path;
+
         try {
             path = UriPath.canonical(path);
 
@@ -83,6 +105,9 @@ public class ClassPathResourceHandler extends AbstractResourceHandler {
                 DirectoryTraversal.protectAgainstInClassPath(resource.getPath());
                 return resource;
             } else {
+                synchronized (missingPaths) {
+                    missingPaths.put(requestedPath, Boolean.TRUE);
+                }
                 return null;
             }
 
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2016 - Per Wendel
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spark.route;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import spark.utils.MimeParse;
+
+/**
+ * Caches the outcome of Accept header negotiation, keyed by the candidate accept types and the Accept header.
+ * Clients only send a handful of distinct Accept headers so after warm-up negotiation is a lookup.
+ * The cache holds up to a number of Accept headers and evicts the least recently used one when it is full, so many
+ * distinct headers, e.g. from a scanner, don't push out the ones regular clients send.
+ *
+ * @author Per Wendel
+ */
+final class AcceptTypeCache {
+
+    static final int DEFAULT_MAX_SIZE = 1024;
+
+    // Keyed by the Accept header first, the candidate types are those of the routes, there are only so many
+    private final Map<String, ConcurrentMap<List<String>, String>> results;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    AcceptTypeCache(int maxSize) {
+        this.results = new LinkedHashMap<String, ConcurrentMap<List<String>, String>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, ConcurrentMap<List<String>, String>> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * Finds the best match, see {@link MimeParse#bestMatch(java.util.Collection, String)}
+     *
+     * @param supported  the supported types, must not be modified after being passed in
+     * @param acceptType the Accept header
+     * @return the best match or {@link MimeParse#NO_MIME_TYPE}
+     */
+    String bestMatch(List<String> supported, String acceptType) {
+        ConcurrentMap<List<String>, String> bySupported;
+        synchronized (results) {
+            bySupported = results.get(acceptType);
+        }
+
+        if (bySupported != null) {
+            String bestMatch = bySupported.get(supported);
+            if (bestMatch != null) {
+                hits.increment();
+                return bestMatch;
+            }
+        }
+
+        misses.increment();
+        String bestMatch = MimeParse.bestMatch(supported, acceptType);
+
+        synchronized (results) {
+            results.computeIfAbsent(acceptType, type -> new ConcurrentHashMap<>()).put(supported, bestMatch);
+        }
+
+        return bestMatch;
+    }
+
+    void clear() {
+        synchronized (results) {
+            results.clear();
+        }
+    }
+
+    long hits() {
+        return hits.sum();
+    }
+
+    long misses() {
+        return misses.sum();
+    }
+
+}
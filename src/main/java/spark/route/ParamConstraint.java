@@ -0,0 +1,178 @@
+/*
+ * Copyright 2016 - Per Wendel
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spark.route;
+
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+import spark.utils.SparkUtils;
+
+/**
+ * A constraint on a route param, written after the param name in braces, e.g. '/items/:id{int}'.
+ * The built in constraints are 'int', 'long' and 'uuid', anything else is a regular expression the whole decoded
+ * segment must match, e.g. '/posts/:slug{[a-z0-9-]+}'. Since paths are split on '/' the expression can't contain '/'.
+ * A route only matches requests where the param satisfies the constraint.
+ *
+ * @author Per Wendel
+ */
+public final class ParamConstraint {
+
+    private static final byte INT = 0;
+    private static final byte LONG = 1;
+    private static final byte UUID_TYPE = 2;
+    private static final byte REGEX = 3;
+
+    private static final int UUID_LENGTH = 36;
+
+    private final String spec;
+    private final byte type;
+    private final Pattern regex;
+
+    private ParamConstraint(String spec) {
+        this.spec = spec;
+        this.type = typeOf(spec);
+        this.regex = type == REGEX ? Pattern.compile(spec) : null;
+    }
+
+    /**
+     * Compiles a constraint
+     *
+     * @param spec the constraint, the part of the param in braces
+     * @return the constraint
+     * @throws java.util.regex.PatternSyntaxException if the constraint is not a built in one nor a valid expression
+     */
+    static ParamConstraint compile(String spec) {
+        return new ParamConstraint(spec);
+    }
+
+    /**
+     * Converts a decoded param value to the type of its constraint, Integer for 'int', Long for 'long' and UUID for
+     * 'uuid'. Values of params constrained by an expression and of unconstrained params stay strings.
+     *
+     * @param spec  the constraint or null if the param has none
+     * @param value the decoded value, already checked against the constraint when the route was matched
+     * @return the typed value
+     */
+    public static Object convert(String spec, String value) {
+        if (spec == null || value == null) {
+            return value;
+        }
+        switch (typeOf(spec)) {
+            case INT:
+                return Integer.valueOf(value);
+            case LONG:
+                return Long.valueOf(value);
+            case UUID_TYPE:
+                return UUID.fromString(value);
+            default:
+                return value;
+        }
+    }
+
+    /**
+     * Checks if a segment of the requested path satisfies the constraint. The built in constraints are checked
+     * without allocating.
+     *
+     * @param path  the requested path
+     * @param start the index of the first character of the segment
+     * @param end   the index after the last character of the segment
+     * @return true if it does
+     */
+    boolean test(String path, int start, int end) {
+        switch (type) {
+            case INT:
+                return isNumber(path, start, end, Integer.MIN_VALUE, Integer.MAX_VALUE);
+            case LONG:
+                return isNumber(path, start, end, Long.MIN_VALUE, Long.MAX_VALUE);
+            case UUID_TYPE:
+                return isUuid(path, start, end);
+            default:
+                return regex.matcher(SparkUtils.decodeSegment(path, start, end)).matches();
+        }
+    }
+
+    private static byte typeOf(String spec) {
+        switch (spec) {
+            case "int":
+                return INT;
+            case "long":
+                return LONG;
+            case "uuid":
+                return UUID_TYPE;
+            default:
+                return REGEX;
+        }
+    }
+
+    private static boolean isNumber(String path, int start, int end, long min, long max) {
+        boolean negative = start < end && path.charAt(start) == '-';
+        int i = negative ? start + 1 : start;
+
+        if (i == end) {
+            return false;
+        }
+
+        // Accumulated as a negative number since the magnitude of min is one more than max
+        long limit = negative ? min : -max;
+        long result = 0;
+
+        for (; i < end; i++) {
+            int digit = path.charAt(i) - '0';
+            if (digit < 0 || digit > 9 || result < limit / 10) {
+                return false;
+            }
+            result = result * 10 - digit;
+            if (result < limit) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isUuid(String path, int start, int end) {
+        if (end - start != UUID_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < UUID_LENGTH; i++) {
+            char c = path.charAt(start + i);
+            if (i == 8 || i == 13 || i == 18 || i == 23) {
+                if (c != '-') {
+                    return false;
+                }
+            } else if (!((c >= '0' && c <= '9') || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F'))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return this == o || (o instanceof ParamConstraint && spec.equals(((ParamConstraint) o).spec));
+    }
+
+    @Override
+    public int hashCode() {
+        return spec.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return spec;
+    }
+
+}
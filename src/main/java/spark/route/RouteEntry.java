@@ -16,6 +16,7 @@
  */
 package spark.route;
 
+import java.util.Collections;
 import java.util.List;
 
 import spark.utils.SparkUtils;
@@ -31,6 +32,10 @@ class RouteEntry {
     String path;
     String acceptedType;
     Object target;
+    long order;
+
+    private RoutePattern pattern;
+    private List<String> acceptedTypes;
 
     RouteEntry() {
     }
@@ -40,12 +45,21 @@ class RouteEntry {
         this.path = entry.path;
         this.acceptedType = entry.acceptedType;
         this.target = entry.target;
+        this.order = entry.order;
+        this.pattern = entry.pattern;
+        this.acceptedTypes = entry.acceptedTypes;
+    }
+
+    /**
+     * @return true if this is a before or after filter mapped for all paths
+     */
+    boolean isFilterForAllPaths() {
+        return (httpMethod == HttpMethod.before || httpMethod == HttpMethod.after)
+                && path.equals(SparkUtils.ALL_PATHS);
     }
 
     boolean matches(HttpMethod httpMethod, String path) {
-        if ((httpMethod == HttpMethod.before || httpMethod == HttpMethod.after)
-                && (this.httpMethod == httpMethod)
-                && this.path.equals(SparkUtils.ALL_PATHS)) {
+        if (this.httpMethod == httpMethod && isFilterForAllPaths()) {
             // Is filter and matches all
             return true;
         }
@@ -56,74 +70,32 @@ class RouteEntry {
         return match;
     }
 
-    private boolean matchPath(String path) { // NOSONAR
-        if (!this.path.endsWith("*") && ((path.endsWith("/") && !this.path.endsWith("/")) // NOSONAR
-                || (this.path.endsWith("/") && !path.endsWith("/")))) {
-            // One and not both ends with slash
-            return false;
-        }
-        if (this.path.equals(path)) {
-            // Paths are the same
-            return true;
-        }
-
-        // check params
-        List<String> thisPathList = SparkUtils.convertRouteToList(this.path);
-        List<String> pathList = SparkUtils.convertRouteToList(path);
-
-        int thisPathSize = thisPathList.size();
-        int pathSize = pathList.size();
-
-        if (thisPathSize == pathSize) {
-            for (int i = 0; i < thisPathSize; i++) {
-                String thisPathPart = thisPathList.get(i);
-                String pathPart = pathList.get(i);
-
-                if ((i == thisPathSize - 1) && (thisPathPart.equals("*") && this.path.endsWith("*"))) {
-                    // wildcard match
-                    return true;
-                }
+    private boolean matchPath(String path) {
+        return pattern().matches(path);
+    }
 
-                if ((!thisPathPart.startsWith(":"))
-                        && !thisPathPart.equals(pathPart)
-                        && !thisPathPart.equals("*")) {
-                    return false;
-                }
-            }
-            // All parts matched
-            return true;
-        } else {
-            // Number of "path parts" not the same
-            // check wild card:
-            if (this.path.endsWith("*")) {
-                if (pathSize == (thisPathSize - 1) && (path.endsWith("/"))) {
-                    // Hack for making wildcards work with trailing slash
-                    pathList.add("");
-                    pathList.add("");
-                    pathSize += 2;
-                }
+    /**
+     * @return the compiled path, compiled again if the path has been changed
+     */
+    RoutePattern pattern() {
+        RoutePattern compiled = pattern;
+        if (compiled == null || compiled.path != path) { // NOSONAR identity is enough to detect a new path
+            compiled = RoutePattern.compile(path);
+            pattern = compiled;
+        }
+        return compiled;
+    }
 
-                if (thisPathSize < pathSize) {
-                    for (int i = 0; i < thisPathSize; i++) {
-                        String thisPathPart = thisPathList.get(i);
-                        String pathPart = pathList.get(i);
-                        if (thisPathPart.equals("*") && (i == thisPathSize - 1) && this.path.endsWith("*")) {
-                            // wildcard match
-                            return true;
-                        }
-                        if (!thisPathPart.startsWith(":")
-                                && !thisPathPart.equals(pathPart)
-                                && !thisPathPart.equals("*")) {
-                            return false;
-                        }
-                    }
-                    // All parts matched
-                    return true;
-                }
-                // End check wild card
-            }
-            return false;
+    /**
+     * @return the accepted type as a list, shared by all lookups so it can be used as a cache key
+     */
+    List<String> acceptedTypes() {
+        List<String> types = acceptedTypes;
+        if (types == null || types.get(0) != acceptedType) { // NOSONAR identity is enough to detect a new type
+            types = Collections.singletonList(acceptedType);
+            acceptedTypes = types;
         }
+        return types;
     }
 
     public String toString() {
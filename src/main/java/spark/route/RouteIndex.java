@@ -0,0 +1,361 @@
+/*
+ * Copyright 2016 - Per Wendel
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spark.route;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import spark.utils.SparkUtils;
+
+/**
+ * Index of route entries in segment tries, one for the routes of all HTTP methods and one per filter type, so that a
+ * single lookup finds the routes of every method mapped for a path.
+ * Each trie level holds the literal segments, one child for all ':param' segments, one child per param constraint
+ * and one for '*' segments, so the cost of a lookup depends on the depth of the requested path and not on the number of mapped routes.
+ * The matching rules are the same as {@link RouteEntry#matches(HttpMethod, String)}.
+ * An index is not changed once it has been built, adding an entry creates a new index that shares the untouched nodes.
+ *
+ * @author Per Wendel
+ */
+final class RouteIndex {
+
+    private static final Comparator<RouteEntry> MAPPING_ORDER = (a, b) -> Long.compare(a.order, b.order);
+
+    private final Map<HttpMethod, Node> filters;
+    private Node routes;
+
+    private RouteIndex(Map<HttpMethod, Node> filters, Node routes) {
+        this.filters = filters;
+        this.routes = routes;
+    }
+
+    /**
+     * Builds the index for route entries. The index is not changed after it has been built.
+     *
+     * @param entries the route entries
+     * @return the index
+     */
+    static RouteIndex of(List<RouteEntry> entries) {
+        RouteIndex index = new RouteIndex(new EnumMap<>(HttpMethod.class), null);
+        for (RouteEntry entry : entries) {
+            index.insert(entry, false);
+        }
+        return index;
+    }
+
+    /**
+     * Creates an index with one more entry, copying only the trie nodes on the path of the new entry
+     *
+     * @param entry the route entry
+     * @return the new index
+     */
+    RouteIndex with(RouteEntry entry) {
+        RouteIndex index = new RouteIndex(new EnumMap<>(filters), routes);
+        index.insert(entry, true);
+        return index;
+    }
+
+    private void insert(RouteEntry entry, boolean copyOnWrite) {
+        Node node = isFilter(entry.httpMethod) ? filters.get(entry.httpMethod) : routes;
+        node = node == null ? new Node() : (copyOnWrite ? node.copy() : node);
+
+        if (isFilter(entry.httpMethod)) {
+            filters.put(entry.httpMethod, node);
+        } else {
+            routes = node;
+        }
+
+        if (entry.isFilterForAllPaths()) {
+            node.allPaths.add(entry);
+            return;
+        }
+
+        RoutePattern pattern = entry.pattern();
+
+        for (int i = 0; i < pattern.size(); i++) {
+            node = node.child(pattern.kinds[i], pattern.segments[i], pattern.constraints[i], copyOnWrite);
+        }
+
+        if (pattern.wildcard) {
+            node.prefixEntries.add(entry);
+        } else {
+            node.exactEntries.add(entry);
+        }
+    }
+
+    /**
+     * Finds the entries matching the requested path. Nothing is allocated when no entry matches.
+     *
+     * @param httpMethod the http method
+     * @param path       the requested path
+     * @return the matching entries in the order they were mapped
+     */
+    List<RouteEntry> find(HttpMethod httpMethod, String path) {
+        if (isFilter(httpMethod)) {
+            return find(filters.get(httpMethod), null, path);
+        }
+        return find(routes, httpMethod, path);
+    }
+
+    /**
+     * Finds the routes of all HTTP methods matching the requested path, in one lookup. Filters are not included.
+     *
+     * @param path the requested path
+     * @return the matching route entries in the order they were mapped
+     */
+    List<RouteEntry> findRoutes(String path) {
+        return find(routes, null, path);
+    }
+
+    private static boolean isFilter(HttpMethod httpMethod) {
+        return httpMethod == HttpMethod.before || httpMethod == HttpMethod.after;
+    }
+
+    private static List<RouteEntry> find(Node root, HttpMethod httpMethod, String path) {
+        if (root == null) {
+            return Collections.emptyList();
+        }
+
+        List<RouteEntry> matches = root.allPaths.isEmpty() ? null : new ArrayList<>(root.allPaths);
+        matches = collect(root, httpMethod, path, 0, path.endsWith("/"), matches);
+
+        if (matches == null) {
+            return Collections.emptyList();
+        }
+        if (matches.size() > 1) {
+            matches.sort(MAPPING_ORDER);
+        }
+        return matches;
+    }
+
+    private static List<RouteEntry> collect(Node node,
+                                            HttpMethod httpMethod,
+                                            String path,
+                                            int position,
+                                            boolean trailingSlash,
+                                            List<RouteEntry> matches) {
+
+        // A wildcard route matches everything below the segments it has consumed so far
+        matches = addAll(matches, node.prefixEntries, httpMethod);
+
+        int start = SparkUtils.nextSegmentStart(path, position);
+
+        if (start == -1) {
+            for (RouteEntry entry : node.exactEntries) {
+                if (entry.pattern().trailingSlash == trailingSlash && isFor(entry, httpMethod)) {
+                    matches = add(matches, entry);
+                }
+            }
+            if (trailingSlash) {
+                // '/users/' is also matched by '/users/*'
+                if (node.param != null) {
+                    matches = addAll(matches, node.param.prefixEntries, httpMethod);
+                }
+                for (int i = 0; i < node.constrainedParams.length; i++) {
+                    matches = addAll(matches, node.constrainedParams[i].prefixEntries, httpMethod);
+                }
+                if (node.splat != null) {
+                    matches = addAll(matches, node.splat.prefixEntries, httpMethod);
+                }
+            }
+            return matches;
+        }
+
+        int end = SparkUtils.segmentEnd(path, start);
+
+        Node literal = node.literal(path, start, end);
+        if (literal != null) {
+            matches = collect(literal, httpMethod, path, end, trailingSlash, matches);
+        }
+        if (node.param != null) {
+            matches = collect(node.param, httpMethod, path, end, trailingSlash, matches);
+        }
+        for (int i = 0; i < node.constrainedParams.length; i++) {
+            if (node.constraints[i].test(path, start, end)) {
+                matches = collect(node.constrainedParams[i], httpMethod, path, end, trailingSlash, matches);
+            }
+        }
+        if (node.splat != null) {
+            matches = collect(node.splat, httpMethod, path, end, trailingSlash, matches);
+        }
+        return matches;
+    }
+
+    private static List<RouteEntry> add(List<RouteEntry> matches, RouteEntry entry) {
+        if (matches == null) {
+            matches = new ArrayList<>();
+        }
+        matches.add(entry);
+        return matches;
+    }
+
+    private static List<RouteEntry> addAll(List<RouteEntry> matches, List<RouteEntry> entries, HttpMethod httpMethod) {
+        for (int i = 0; i < entries.size(); i++) {
+            RouteEntry entry = entries.get(i);
+            if (isFor(entry, httpMethod)) {
+                matches = add(matches, entry);
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Checks if an entry is for the http method, a null method matches the entries of all methods
+     */
+    private static boolean isFor(RouteEntry entry, HttpMethod httpMethod) {
+        return httpMethod == null || entry.httpMethod == httpMethod;
+    }
+
+    private static final class Node {
+
+        private String[] literalKeys = new String[0];
+        private Node[] literalNodes = new Node[0];
+        private int literalCount;
+
+        private Node param;
+        private ParamConstraint[] constraints = new ParamConstraint[0];
+        private Node[] constrainedParams = new Node[0];
+        private Node splat;
+
+        private final List<RouteEntry> exactEntries;
+        private final List<RouteEntry> prefixEntries;
+        private final List<RouteEntry> allPaths;
+
+        private Node() {
+            exactEntries = new ArrayList<>();
+            prefixEntries = new ArrayList<>();
+            allPaths = new ArrayList<>();
+        }
+
+        private Node(Node node) {
+            literalKeys = node.literalKeys.clone();
+            literalNodes = node.literalNodes.clone();
+            literalCount = node.literalCount;
+            param = node.param;
+            constraints = node.constraints;
+            constrainedParams = node.constrainedParams.clone();
+            splat = node.splat;
+            exactEntries = new ArrayList<>(node.exactEntries);
+            prefixEntries = new ArrayList<>(node.prefixEntries);
+            allPaths = new ArrayList<>(node.allPaths);
+        }
+
+        private Node copy() {
+            return new Node(this);
+        }
+
+        private Node child(byte kind, String segment, ParamConstraint constraint, boolean copyOnWrite) {
+            if (kind == RoutePattern.PARAM && constraint != null) {
+                return constrainedParam(constraint, copyOnWrite);
+            }
+            if (kind == RoutePattern.PARAM) {
+                param = param == null ? new Node() : (copyOnWrite ? param.copy() : param);
+                return param;
+            }
+            if (kind == RoutePattern.SPLAT) {
+                splat = splat == null ? new Node() : (copyOnWrite ? splat.copy() : splat);
+                return splat;
+            }
+
+            Node node = literal(segment, 0, segment.length());
+            if (node == null || copyOnWrite) {
+                node = node == null ? new Node() : node.copy();
+                putLiteral(segment, node);
+            }
+            return node;
+        }
+
+        private Node constrainedParam(ParamConstraint constraint, boolean copyOnWrite) {
+            for (int i = 0; i < constraints.length; i++) {
+                if (constraints[i].equals(constraint)) {
+                    if (copyOnWrite) {
+                        constrainedParams[i] = constrainedParams[i].copy();
+                    }
+                    return constrainedParams[i];
+                }
+            }
+
+            // Rarely more than a few, so the arrays are grown one at a time and never changed in place
+            constraints = Arrays.copyOf(constraints, constraints.length + 1);
+            constrainedParams = Arrays.copyOf(constrainedParams, constrainedParams.length + 1);
+            constraints[constraints.length - 1] = constraint;
+            constrainedParams[constrainedParams.length - 1] = new Node();
+            return constrainedParams[constrainedParams.length - 1];
+        }
+
+        /**
+         * Looks up the literal child for a region of the requested path, an open addressing table is used so that
+         * no substring has to be created for the lookup.
+         */
+        private Node literal(String path, int start, int end) {
+            if (literalCount == 0) {
+                return null;
+            }
+            int mask = literalKeys.length - 1;
+            for (int slot = hash(path, start, end) & mask; literalKeys[slot] != null; slot = (slot + 1) & mask) {
+                if (RoutePattern.regionEquals(literalKeys[slot], path, start, end)) {
+                    return literalNodes[slot];
+                }
+            }
+            return null;
+        }
+
+        private void putLiteral(String segment, Node node) {
+            if ((literalCount + 1) * 2 > literalKeys.length) {
+                String[] keys = literalKeys;
+                Node[] nodes = literalNodes;
+
+                literalKeys = new String[Math.max(4, keys.length * 2)];
+                literalNodes = new Node[literalKeys.length];
+                literalCount = 0;
+
+                for (int i = 0; i < keys.length; i++) {
+                    if (keys[i] != null) {
+                        putLiteral(keys[i], nodes[i]);
+                    }
+                }
+            }
+
+            int mask = literalKeys.length - 1;
+            int slot = hash(segment, 0, segment.length()) & mask;
+            while (literalKeys[slot] != null) {
+                if (literalKeys[slot].equals(segment)) {
+                    literalNodes[slot] = node;
+                    return;
+                }
+                slot = (slot + 1) & mask;
+            }
+            literalKeys[slot] = segment;
+            literalNodes[slot] = node;
+            literalCount++;
+        }
+
+        private static int hash(String path, int start, int end) {
+            int hash = 0;
+            for (int i = start; i < end; i++) {
+                hash = 31 * hash + path.charAt(i);
+            }
+            return hash ^ (hash >>> 16);
+        }
+    }
+
+}
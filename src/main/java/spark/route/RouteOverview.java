@@ -22,6 +22,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.WeakHashMap;
 
 import spark.Request;
 import spark.Response;
@@ -57,15 +58,27 @@ public class RouteOverview {
 
     // Everything below this point is either package private or private
 
-    static List<RouteEntry> routes = new ArrayList<>();
+    // The routes aren't copied when they are mapped, the overview lists the current routes when it is shown
+    private static final Map<Routes, Boolean> sources = new WeakHashMap<>();
 
-    static void add(RouteEntry entry, Object wrapped) {
+    static synchronized void register(Routes routes) {
+        sources.put(routes, Boolean.TRUE);
+    }
 
-        if (wrapped instanceof Wrapper) {
-            entry.target = ((Wrapper) wrapped).delegate();
-        }
+    static synchronized List<RouteEntry> routes() {
+        List<RouteEntry> routes = new ArrayList<>();
+
+        for (Routes source : sources.keySet()) {
+            for (RouteEntry entry : source.entries()) {
+                RouteEntry copy = new RouteEntry(entry);
 
-        routes.add(entry);
+                if (copy.target instanceof Wrapper) {
+                    copy.target = ((Wrapper) copy.target).delegate();
+                }
+                routes.add(copy);
+            }
+        }
+        return routes;
     }
 
     static String createHtmlOverview(Request request, Response response) {
@@ -76,7 +89,7 @@ public class RouteOverview {
 
         List<String> tableContent = new ArrayList<>(singletonList("<thead><tr><td>Method</td><td>Accepts</td><td>Path</td><td>Route</td></tr></thead>"));
 
-        routes.forEach(r -> {
+        routes().forEach(r -> {
             tableContent.add(String.format(rowTemplate, r.httpMethod.name(), r.acceptedType.replace("*/*", "any"), r.path, createHtmlForRouteTarget(r.target)));
         });
 
@@ -0,0 +1,197 @@
+/*
+ * Copyright 2016 - Per Wendel
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spark.route;
+
+import java.util.List;
+
+import spark.utils.SparkUtils;
+
+/**
+ * A route path split into its segments once, when the route is mapped.
+ * Matching walks the requested path by index and does not allocate, unless a param is constrained by an expression.
+ *
+ * @author Per Wendel
+ */
+final class RoutePattern {
+
+    static final byte LITERAL = 0;
+    static final byte PARAM = 1;
+    static final byte SPLAT = 2;
+
+    final String path;
+    final String[] segments;
+    final byte[] kinds;
+    final ParamConstraint[] constraints;
+    final boolean trailingSlash;
+    final boolean wildcard;
+
+    private RoutePattern(String path) {
+        List<String> parts = SparkUtils.convertRouteToList(path);
+
+        this.path = path;
+        this.segments = parts.toArray(new String[parts.size()]);
+        this.kinds = new byte[segments.length];
+        this.constraints = new ParamConstraint[segments.length];
+        this.trailingSlash = path.endsWith("/");
+        this.wildcard = path.endsWith("*");
+
+        for (int i = 0; i < segments.length; i++) {
+            if (SparkUtils.isParam(segments[i])) {
+                kinds[i] = PARAM;
+
+                String segment = segments[i];
+                int nameEnd = SparkUtils.paramNameEnd(segment, 0, segment.length());
+                if (nameEnd < segment.length()) {
+                    constraints[i] = ParamConstraint.compile(segment.substring(nameEnd + 1, segment.length() - 1));
+                }
+            } else if (SparkUtils.isSplat(segments[i])) {
+                kinds[i] = SPLAT;
+            } else {
+                kinds[i] = LITERAL;
+            }
+        }
+    }
+
+    static RoutePattern compile(String path) {
+        return new RoutePattern(path);
+    }
+
+    /**
+     * @return the number of segments
+     */
+    int size() {
+        return segments.length;
+    }
+
+    /**
+     * Checks if the requested path matches this pattern.
+     * A pattern that ends with '*' matches all paths below its segments, trailing slashes included.
+     *
+     * @param requestPath the requested path
+     * @return true if it matches
+     */
+    boolean matches(String requestPath) {
+        if (!wildcard && trailingSlash != requestPath.endsWith("/")) {
+            // One and not both ends with slash
+            return false;
+        }
+
+        int position = 0;
+
+        for (int i = 0; i < segments.length; i++) {
+            int start = SparkUtils.nextSegmentStart(requestPath, position);
+
+            if (start == -1) {
+                // The requested path has fewer segments, '/users/' is still matched by '/users/*'
+                return wildcard
+                        && i == segments.length - 1
+                        && kinds[i] != LITERAL
+                        && requestPath.endsWith("/");
+            }
+
+            int end = SparkUtils.segmentEnd(requestPath, start);
+
+            if (kinds[i] == LITERAL && !regionEquals(segments[i], requestPath, start, end)) {
+                return false;
+            }
+            if (constraints[i] != null && !constraints[i].test(requestPath, start, end)) {
+                return false;
+            }
+            position = end;
+        }
+
+        return wildcard || SparkUtils.nextSegmentStart(requestPath, position) == -1;
+    }
+
+    /**
+     * Checks if this pattern matches every path the provided route pattern matches.
+     *
+     * @param route the route pattern
+     * @return true if it does, false if it does not or if it depends on the requested path
+     */
+    boolean covers(RoutePattern route) {
+        if (!wildcard) {
+            if (route.wildcard || route.size() != size() || route.trailingSlash != trailingSlash) {
+                return false;
+            }
+        } else if (route.size() < size()) {
+            return false;
+        }
+
+        for (int i = 0; i < segments.length; i++) {
+            if (kinds[i] == LITERAL && (route.kinds[i] != LITERAL || !segments[i].equals(route.segments[i]))) {
+                return false;
+            }
+            if (constraints[i] != null && !constraints[i].equals(route.constraints[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks if this pattern matches none of the paths the provided route pattern matches.
+     *
+     * @param route the route pattern
+     * @return true if it does not, false if it does or if it depends on the requested path
+     */
+    boolean isDisjointFrom(RoutePattern route) {
+        int common = Math.min(size(), route.size());
+
+        for (int i = 0; i < common; i++) {
+            if (kinds[i] == LITERAL && route.kinds[i] == LITERAL && !segments[i].equals(route.segments[i])) {
+                return true;
+            }
+            if (isRejectedBy(segments[i], kinds[i], route.constraints[i])
+                    || isRejectedBy(route.segments[i], route.kinds[i], constraints[i])) {
+                return true;
+            }
+        }
+
+        if (!wildcard && !route.wildcard) {
+            return size() != route.size() || trailingSlash != route.trailingSlash;
+        }
+        if (!wildcard) {
+            return isShorterThanWildcard(this, route);
+        }
+        if (!route.wildcard) {
+            return isShorterThanWildcard(route, this);
+        }
+        return false;
+    }
+
+    /**
+     * A wildcard pattern matches paths with at least as many segments as it has, or with one less segment
+     * and a trailing slash when its last segment is not a literal.
+     */
+    private static boolean isShorterThanWildcard(RoutePattern exact, RoutePattern wildcard) {
+        int last = wildcard.size() - 1;
+
+        return exact.size() < last
+                || (exact.size() == last && (!exact.trailingSlash || wildcard.kinds[last] == LITERAL));
+    }
+
+    private static boolean isRejectedBy(String segment, byte kind, ParamConstraint constraint) {
+        return kind == LITERAL && constraint != null && !constraint.test(segment, 0, segment.length());
+    }
+
+    static boolean regionEquals(String segment, String path, int start, int end) {
+        int length = end - start;
+        return segment.length() == length && path.regionMatches(start, segment, 0, length);
+    }
+
+}
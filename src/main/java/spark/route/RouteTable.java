@@ -0,0 +1,165 @@
+/*
+ * Copyright 2016 - Per Wendel
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spark.route;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import spark.CustomErrorPages;
+import spark.ExceptionMapper;
+
+/**
+ * An immutable snapshot of the mapped routes together with their index, and the exception handlers and error
+ * pages used by the requests matched against them.
+ * Changing the routes creates a new table, so requests being matched always see a complete table.
+ *
+ * @author Per Wendel
+ */
+final class RouteTable {
+
+    private static final RouteIndex EMPTY_INDEX = RouteIndex.of(Collections.emptyList());
+
+    final List<RouteEntry> routes;
+    final RouteIndex index;
+    final ExceptionMapper exceptionMapper;
+    final CustomErrorPages errorPages;
+
+    private final Map<RouteEntry, RouteFilters> routeFilters = new ConcurrentHashMap<>();
+
+    private RouteTable(List<RouteEntry> routes,
+                       RouteIndex index,
+                       ExceptionMapper exceptionMapper,
+                       CustomErrorPages errorPages) {
+        this.routes = routes;
+        this.index = index;
+        this.exceptionMapper = exceptionMapper;
+        this.errorPages = errorPages;
+    }
+
+    /**
+     * Creates a table without routes, with an exception mapper and error pages of its own
+     *
+     * @return the table
+     */
+    static RouteTable empty() {
+        return new RouteTable(Collections.emptyList(),
+                              EMPTY_INDEX,
+                              new ExceptionMapper(),
+                              new CustomErrorPages());
+    }
+
+    /**
+     * Creates a table, building the index once
+     *
+     * @param routes          the route entries in mapping order
+     * @param exceptionMapper the exception handlers
+     * @param errorPages      the error pages
+     * @return the table
+     */
+    static RouteTable of(List<RouteEntry> routes, ExceptionMapper exceptionMapper, CustomErrorPages errorPages) {
+        List<RouteEntry> copy = Collections.unmodifiableList(new ArrayList<>(routes));
+        return new RouteTable(copy, RouteIndex.of(copy), exceptionMapper, errorPages);
+    }
+
+    /**
+     * Creates a table with other routes and the same exception handlers and error pages
+     *
+     * @param routes the route entries in mapping order
+     * @return the new table
+     */
+    RouteTable withRoutes(List<RouteEntry> routes) {
+        return of(routes, exceptionMapper, errorPages);
+    }
+
+    /**
+     * Creates a table with one more entry. The index of this table is shared except for the trie nodes on the
+     * path of the new entry.
+     *
+     * @param entry the entry to add
+     * @return the new table
+     */
+    RouteTable with(RouteEntry entry) {
+        List<RouteEntry> copy = new ArrayList<>(routes.size() + 1);
+        copy.addAll(routes);
+        copy.add(entry);
+        return new RouteTable(Collections.unmodifiableList(copy), index.with(entry), exceptionMapper, errorPages);
+    }
+
+    /**
+     * Gets the before and after filters that apply to all requests matching the route, worked out the first time
+     * the route is matched.
+     *
+     * @param route the route entry
+     * @return the filters or {@link RouteFilters#PATH_DEPENDENT}
+     */
+    RouteFilters filtersFor(RouteEntry route) {
+        return routeFilters.computeIfAbsent(route, this::compileFilters);
+    }
+
+    /**
+     * Works out the filters of every route up front, which parses all route patterns. Used for a table built to
+     * replace another one, so the first requests matched against it don't pay for it.
+     *
+     * @return this table
+     */
+    RouteTable prepared() {
+        for (RouteEntry entry : routes) {
+            if (entry.httpMethod != HttpMethod.before && entry.httpMethod != HttpMethod.after) {
+                filtersFor(entry);
+            }
+        }
+        return this;
+    }
+
+    private RouteFilters compileFilters(RouteEntry route) {
+        List<RouteEntry> before = new ArrayList<>();
+        List<RouteEntry> after = new ArrayList<>();
+
+        for (RouteEntry entry : routes) {
+            if (entry.httpMethod != HttpMethod.before && entry.httpMethod != HttpMethod.after) {
+                continue;
+            }
+            if (entry.isFilterForAllPaths() || entry.pattern().covers(route.pattern())) {
+                (entry.httpMethod == HttpMethod.before ? before : after).add(entry);
+            } else if (!entry.pattern().isDisjointFrom(route.pattern())) {
+                return RouteFilters.PATH_DEPENDENT;
+            }
+        }
+
+        return new RouteFilters(before, after);
+    }
+
+    /**
+     * The before and after filters that apply to all requests matching a route
+     */
+    static final class RouteFilters {
+
+        static final RouteFilters PATH_DEPENDENT = new RouteFilters(Collections.emptyList(), Collections.emptyList());
+
+        final List<RouteEntry> before;
+        final List<RouteEntry> after;
+
+        RouteFilters(List<RouteEntry> before, List<RouteEntry> after) {
+            this.before = before;
+            this.after = after;
+        }
+    }
+
+}
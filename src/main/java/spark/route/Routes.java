@@ -17,18 +17,23 @@
 package spark.route;
 
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
+import java.util.function.Consumer;
 
+import spark.CustomErrorPages;
+import spark.ExceptionMapper;
+import spark.route.RouteTable.RouteFilters;
 import spark.routematch.RouteMatch;
+import spark.routematch.RoutePipeline;
 import spark.utils.MimeParse;
 import spark.utils.StringUtils;
 
 /**
  * Holds the routes and performs matching from HTTP requests to routes.
  * Works as Sinatra's, ie. if there are more than one match the one that was mapped first is chosen.
+ * Routes can be changed while requests are being matched: every change publishes a new immutable route table,
+ * so matching never locks and never sees a partly changed table.
  *
  * @author Per Wendel
  */
@@ -37,7 +42,16 @@ public class Routes {
     private static final org.slf4j.Logger LOG = org.slf4j.LoggerFactory.getLogger(Routes.class);
     private static final char SINGLE_QUOTE = '\'';
 
-    private List<RouteEntry> routes;
+    // The Allow headers by the bit set of allowed methods, Strings are immutable so racing writes are harmless
+    private static final String[] ALLOW_HEADERS = new String[1 << HttpMethod.values().length];
+
+    private volatile RouteTable table = RouteTable.empty();
+    private List<RouteEntry> batch;
+    private ExceptionMapper reloadedExceptionMapper;
+    private CustomErrorPages reloadedErrorPages;
+    private long mappingSequence;
+
+    private final AcceptTypeCache acceptTypeCache = new AcceptTypeCache(AcceptTypeCache.DEFAULT_MAX_SIZE);
 
     public static Routes create() {
         return new Routes();
@@ -47,17 +61,19 @@ public class Routes {
      * Constructor
      */
     protected Routes() {
-        routes = new ArrayList<>();
+        RouteOverview.register(this);
     }
 
     /**
-     * Parse and validates a route and adds it
+     * Parse and validates a route and adds it. Outside a {@link #batch(Consumer)} each route publishes a new route
+     * table, which copies the list of routes and the trie nodes on the path of the route, so mapping many routes
+     * one at a time costs time quadratic in their number. Map them in a batch to build the table once.
      *
      * @param route      the route path
      * @param acceptType the accept type
      * @param target     the invocation target
      */
-    public void add(String route, String acceptType, Object target) {
+    public synchronized void add(String route, String acceptType, Object target) {
         try {
             int singleQuoteIndex = route.indexOf(SINGLE_QUOTE);
             String httpMethod = route.substring(0, singleQuoteIndex).trim().toLowerCase(); // NOSONAR
@@ -81,6 +97,23 @@ public class Routes {
         }
     }
 
+    /**
+     * Adds a route without parsing it from a string. Like {@link #add(String, String, Object)} the path is trimmed,
+     * and each route added outside a {@link #batch(Consumer)} publishes a new route table.
+     *
+     * @param httpMethod the http method
+     * @param path       the route path
+     * @param acceptType the accept type
+     * @param target     the invocation target
+     */
+    public synchronized void add(HttpMethod httpMethod, String path, String acceptType, Object target) {
+        if (httpMethod == null || httpMethod == HttpMethod.unsupported) {
+            LOG.error("The route {} has an invalid HTTP method: {}", path, httpMethod);
+            return;
+        }
+        addRoute(httpMethod, path.trim(), acceptType, target);
+    }
+
     /**
      * finds target for a requested route
      *
@@ -90,7 +123,7 @@ public class Routes {
      * @return the target
      */
     public RouteMatch find(HttpMethod httpMethod, String path, String acceptType) {
-        List<RouteEntry> routeEntries = this.findTargetsForRequestedRoute(httpMethod, path);
+        List<RouteEntry> routeEntries = table.index.find(httpMethod, path);
         RouteEntry entry = findTargetWithGivenAcceptType(routeEntries, acceptType);
         return entry != null ? new RouteMatch(entry.target, entry.path, path, acceptType) : null;
     }
@@ -105,29 +138,71 @@ public class Routes {
      */
     public List<RouteMatch> findMultiple(HttpMethod httpMethod, String path, String acceptType) {
         List<RouteMatch> matchSet = new ArrayList<>();
-        List<RouteEntry> routeEntries = findTargetsForRequestedRoute(httpMethod, path);
+        List<RouteEntry> routeEntries = table.index.find(httpMethod, path);
 
-        for (RouteEntry routeEntry : routeEntries) {
-            if (acceptType != null) {
-                String bestMatch = MimeParse.bestMatch(Arrays.asList(routeEntry.acceptedType), acceptType);
+        addMatches(routeEntries, path, acceptType, matchSet);
 
-                if (routeWithGivenAcceptType(bestMatch)) {
-                    matchSet.add(new RouteMatch(routeEntry.target, routeEntry.path, path, acceptType));
-                }
-            } else {
-                matchSet.add(new RouteMatch(routeEntry.target, routeEntry.path, path, acceptType));
-            }
+        return matchSet;
+    }
+
+    /**
+     * Finds the before filters, the route and the after filters for a requested route.
+     * The routes of all http methods mapped for the path are found in one lookup. If no HEAD route is mapped the
+     * GET route is used for HEAD requests, and if no route is mapped for the http method the pipeline holds the
+     * methods that are allowed instead.
+     * The filters that apply to a route are worked out once and reused until the routes are changed, unless
+     * it depends on the requested path (e.g. filter '/users/admin' and route '/users/:name') in which case
+     * the filters are matched against the path. Requests with no filters get empty filter lists.
+     *
+     * @param httpMethod the http method
+     * @param path       the path
+     * @param acceptType the accept type
+     * @return the pipeline, with a null route if no route was found
+     */
+    public RoutePipeline findPipeline(HttpMethod httpMethod, String path, String acceptType) {
+        RouteTable routeTable = table;
+
+        List<RouteEntry> allRouteEntries = routeTable.index.findRoutes(path);
+        List<RouteEntry> routeEntries = forMethod(allRouteEntries, httpMethod);
+
+        if (routeEntries.isEmpty() && httpMethod == HttpMethod.head) {
+            routeEntries = forMethod(allRouteEntries, HttpMethod.get);
         }
 
-        return matchSet;
+        RouteEntry entry = findTargetWithGivenAcceptType(routeEntries, acceptType);
+
+        RouteMatch route = entry != null ? new RouteMatch(entry.target, entry.path, path, acceptType) : null;
+        RouteFilters filters = entry != null ? routeTable.filtersFor(entry) : null;
+        String allow = routeEntries.isEmpty() && !allRouteEntries.isEmpty() ? allowHeader(allRouteEntries) : null;
+
+        if (filters == null || filters == RouteFilters.PATH_DEPENDENT) {
+            // Nothing is allocated for the filters of a path that has none
+            return new RoutePipeline(filterMatches(routeTable.index.find(HttpMethod.before, path), path, acceptType),
+                                     route,
+                                     filterMatches(routeTable.index.find(HttpMethod.after, path), path, acceptType),
+                                     allow,
+                                     routeTable.exceptionMapper,
+                                     routeTable.errorPages);
+        }
+
+        return new RoutePipeline(filterMatches(filters.before, path, acceptType),
+                                 route,
+                                 filterMatches(filters.after, path, acceptType),
+                                 allow,
+                                 routeTable.exceptionMapper,
+                                 routeTable.errorPages);
     }
 
     /**
      * ¨Clear all routes
      */
-    public void clear() {
-        routes.clear();
-        RouteOverview.routes.clear();
+    public synchronized void clear() {
+        if (batch != null) {
+            batch.clear();
+        } else {
+            table = table.withRoutes(Collections.emptyList());
+        }
+        acceptTypeCache.clear();
     }
 
     /**
@@ -142,7 +217,7 @@ public class Routes {
      *                                  or an invalid HTTP method
      * @since 2.2
      */
-    public boolean remove(String path, String httpMethod) {
+    public synchronized boolean remove(String path, String httpMethod) {
         if (StringUtils.isEmpty(path)) {
             throw new IllegalArgumentException("path cannot be null or blank");
         }
@@ -166,7 +241,7 @@ public class Routes {
      * @throws java.lang.IllegalArgumentException if <tt>path</tt> is null or blank
      * @since 2.2
      */
-    public boolean remove(String path) {
+    public synchronized boolean remove(String path) {
         if (StringUtils.isEmpty(path)) {
             throw new IllegalArgumentException("path cannot be null or blank");
         }
@@ -174,6 +249,103 @@ public class Routes {
         return removeRoute((HttpMethod) null, path);
     }
 
+    /**
+     * Makes several changes to the routes at once. The changes are published to requests being matched when all of
+     * them have been made, and the route index is built once for all of them. If the changes throw an exception
+     * none of them are published.
+     * Example:
+     * routes.batch(r {@literal ->} {
+     * ....r.remove("/tenant/a/*");
+     * ....r.add("get '/tenant/a/*'", "text/html", route);
+     * });
+     *
+     * @param changes the changes, made by calling add, remove and clear on the provided routes
+     */
+    public synchronized void batch(Consumer<Routes> changes) {
+        if (batch != null) {
+            // Nested batch, part of the outer one
+            changes.accept(this);
+            return;
+        }
+
+        batch = new ArrayList<>(table.routes);
+        try {
+            changes.accept(this);
+            table = table.withRoutes(batch);
+        } finally {
+            batch = null;
+        }
+    }
+
+    /**
+     * Replaces all routes, filters, exception handlers and error pages at once. The new routes are mapped off to
+     * the side and their patterns parsed and filters worked out before they are published together with the
+     * exception handlers and error pages, so no request sees a partly mapped table or no table at all.
+     * Requests already matched finish with the routes, exception handlers and error pages they were matched with.
+     * If the definitions throw an exception, or a route pattern is invalid, nothing is replaced.
+     *
+     * @param definitions     maps the new routes by calling add on the provided routes, and the new exception
+     *                        handlers and error pages on the ones returned by {@link #exceptionMapper()} and
+     *                        {@link #errorPages()}
+     * @param exceptionMapper the new exception handlers, empty or mapped by the definitions
+     * @param errorPages      the new error pages, empty or mapped by the definitions
+     */
+    public synchronized void reload(Consumer<Routes> definitions,
+                                    ExceptionMapper exceptionMapper,
+                                    CustomErrorPages errorPages) {
+        if (batch != null) {
+            throw new IllegalStateException("The routes can't be reloaded in a batch");
+        }
+
+        batch = new ArrayList<>();
+        reloadedExceptionMapper = exceptionMapper;
+        reloadedErrorPages = errorPages;
+        try {
+            definitions.accept(this);
+            table = RouteTable.of(batch, exceptionMapper, errorPages).prepared();
+            acceptTypeCache.clear();
+        } finally {
+            batch = null;
+            reloadedExceptionMapper = null;
+            reloadedErrorPages = null;
+        }
+    }
+
+    /**
+     * @return the exception handlers to map exception handlers in, the ones being reloaded during a reload
+     */
+    public synchronized ExceptionMapper exceptionMapper() {
+        return reloadedExceptionMapper != null ? reloadedExceptionMapper : table.exceptionMapper;
+    }
+
+    /**
+     * @return the error pages to map error pages in, the ones being reloaded during a reload
+     */
+    public synchronized CustomErrorPages errorPages() {
+        return reloadedErrorPages != null ? reloadedErrorPages : table.errorPages;
+    }
+
+    /**
+     * @return the number of Accept header negotiations that were answered from the cache
+     */
+    public long acceptTypeCacheHits() {
+        return acceptTypeCache.hits();
+    }
+
+    /**
+     * @return the number of Accept header negotiations that had to parse the Accept header
+     */
+    public long acceptTypeCacheMisses() {
+        return acceptTypeCache.misses();
+    }
+
+    /**
+     * @return the mapped routes, in mapping order
+     */
+    List<RouteEntry> entries() {
+        return table.routes;
+    }
+
     //////////////////////////////////////////////////
     // PRIVATE METHODS
     //////////////////////////////////////////////////
@@ -184,50 +356,134 @@ public class Routes {
         entry.path = url;
         entry.target = target;
         entry.acceptedType = acceptedType;
-        LOG.debug("Adds route: " + entry);
+        entry.order = mappingSequence++;
+        LOG.debug("Adds route: {}", entry);
         // Adds to end of list
-        routes.add(entry);
-        RouteOverview.add(new RouteEntry(entry), target);
+        if (batch != null) {
+            batch.add(entry);
+        } else {
+            table = table.with(entry);
+        }
     }
 
-    //can be cached? I don't think so.
-    private Map<String, RouteEntry> getAcceptedMimeTypes(List<RouteEntry> routes) {
-        Map<String, RouteEntry> acceptedTypes = new HashMap<>();
+    /**
+     * Lists the distinct accepted types of the matching routes. MimeParse picks the last one of equally good types,
+     * so the types are listed in reverse mapping order to let the first mapped route win.
+     */
+    private static List<String> getAcceptedMimeTypes(List<RouteEntry> routes) {
+        RouteEntry first = routes.get(0);
+        List<String> acceptedTypes = null;
 
         for (RouteEntry routeEntry : routes) {
-            if (!acceptedTypes.containsKey(routeEntry.acceptedType)) {
-                acceptedTypes.put(routeEntry.acceptedType, routeEntry);
+            if (acceptedTypes == null && !routeEntry.acceptedType.equals(first.acceptedType)) {
+                acceptedTypes = new ArrayList<>();
+                acceptedTypes.add(first.acceptedType);
+            }
+            if (acceptedTypes != null && !acceptedTypes.contains(routeEntry.acceptedType)) {
+                acceptedTypes.add(routeEntry.acceptedType);
             }
         }
 
+        if (acceptedTypes == null) {
+            // Most of the time all of them accept the same type
+            return first.acceptedTypes();
+        }
+        Collections.reverse(acceptedTypes);
         return acceptedTypes;
     }
 
+    private static List<RouteEntry> forMethod(List<RouteEntry> routeEntries, HttpMethod httpMethod) {
+        int matching = 0;
+        for (int i = 0; i < routeEntries.size(); i++) {
+            if (routeEntries.get(i).httpMethod == httpMethod) {
+                matching++;
+            }
+        }
+
+        if (matching == routeEntries.size()) {
+            return routeEntries;
+        }
+        if (matching == 0) {
+            return Collections.emptyList();
+        }
+
+        List<RouteEntry> entries = new ArrayList<>(matching);
+        for (RouteEntry routeEntry : routeEntries) {
+            if (routeEntry.httpMethod == httpMethod) {
+                entries.add(routeEntry);
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Creates the Allow header for the mapped routes. HEAD is allowed when GET is and OPTIONS is always allowed.
+     * There are few combinations of methods so the headers are created once per combination.
+     */
+    private static String allowHeader(List<RouteEntry> routeEntries) {
+        int methods = 1 << HttpMethod.options.ordinal();
+
+        for (int i = 0; i < routeEntries.size(); i++) {
+            methods |= 1 << routeEntries.get(i).httpMethod.ordinal();
+        }
+        if ((methods & (1 << HttpMethod.get.ordinal())) != 0) {
+            methods |= 1 << HttpMethod.head.ordinal();
+        }
+
+        String allow = ALLOW_HEADERS[methods];
+
+        if (allow == null) {
+            StringBuilder header = new StringBuilder();
+            for (HttpMethod method : HttpMethod.values()) {
+                if ((methods & (1 << method.ordinal())) != 0) {
+                    header.append(header.length() > 0 ? ", " : "").append(method.name().toUpperCase()); // NOSONAR
+                }
+            }
+            allow = header.toString();
+            ALLOW_HEADERS[methods] = allow;
+        }
+        return allow;
+    }
+
     private boolean routeWithGivenAcceptType(String bestMatch) {
         return !MimeParse.NO_MIME_TYPE.equals(bestMatch);
     }
 
-    private List<RouteEntry> findTargetsForRequestedRoute(HttpMethod httpMethod, String path) {
-        List<RouteEntry> matchSet = new ArrayList<RouteEntry>();
-        for (RouteEntry entry : routes) {
-            if (entry.matches(httpMethod, path)) {
-                matchSet.add(entry);
+    private void addMatches(List<RouteEntry> routeEntries, String path, String acceptType, List<RouteMatch> matchSet) {
+        for (RouteEntry routeEntry : routeEntries) {
+            if (acceptType != null) {
+                String bestMatch = acceptTypeCache.bestMatch(routeEntry.acceptedTypes(), acceptType);
+
+                if (routeWithGivenAcceptType(bestMatch)) {
+                    matchSet.add(new RouteMatch(routeEntry.target, routeEntry.path, path, acceptType));
+                }
+            } else {
+                matchSet.add(new RouteMatch(routeEntry.target, routeEntry.path, path, acceptType));
             }
         }
+    }
+
+    private List<RouteMatch> filterMatches(List<RouteEntry> filterEntries, String path, String acceptType) {
+        if (filterEntries.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<RouteMatch> matchSet = new ArrayList<>(filterEntries.size());
+        addMatches(filterEntries, path, acceptType, matchSet);
         return matchSet;
     }
 
-    // TODO: I believe this feature has impacted performance. Optimization?
     private RouteEntry findTargetWithGivenAcceptType(List<RouteEntry> routeMatches, String acceptType) {
         if (acceptType != null && routeMatches.size() > 0) {
-            Map<String, RouteEntry> acceptedMimeTypes = getAcceptedMimeTypes(routeMatches);
-            String bestMatch = MimeParse.bestMatch(acceptedMimeTypes.keySet(), acceptType);
+            String bestMatch = acceptTypeCache.bestMatch(getAcceptedMimeTypes(routeMatches), acceptType);
 
             if (routeWithGivenAcceptType(bestMatch)) {
-                return acceptedMimeTypes.get(bestMatch);
-            } else {
-                return null;
+                for (RouteEntry routeEntry : routeMatches) {
+                    if (routeEntry.acceptedType.equals(bestMatch)) {
+                        return routeEntry;
+                    }
+                }
             }
+            return null;
         } else {
             if (routeMatches.size() > 0) {
                 return routeMatches.get(0);
@@ -238,6 +494,7 @@ public class Routes {
     }
 
     private boolean removeRoute(HttpMethod httpMethod, String path) {
+        List<RouteEntry> routes = batch != null ? batch : new ArrayList<>(table.routes);
         List<RouteEntry> forRemoval = new ArrayList<>();
 
         for (RouteEntry routeEntry : routes) {
@@ -248,13 +505,20 @@ public class Routes {
                 httpMethodToMatch = routeEntry.httpMethod;
             }
 
-            if (routeEntry.matches(httpMethodToMatch, path)) {
+            // A route with constrained params, e.g. '/items/:id{int}', does not match its own path
+            if (routeEntry.matches(httpMethodToMatch, path)
+                    || (routeEntry.httpMethod == httpMethodToMatch && routeEntry.path.equals(path))) {
                 LOG.debug("Removing path {}", path, httpMethod == null ? "" : " with HTTP method " + httpMethod);
 
                 forRemoval.add(routeEntry);
             }
         }
 
-        return routes.removeAll(forRemoval);
+        boolean removed = routes.removeAll(forRemoval);
+
+        if (removed && batch == null) {
+            table = table.withRoutes(routes);
+        }
+        return removed;
     }
 }
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2016 - Per Wendel
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spark.routematch;
+
+import java.util.List;
+
+import spark.CustomErrorPages;
+import spark.ExceptionMapper;
+
+/**
+ * The before filters, the route and the after filters matching a request, in the order they are executed, with
+ * the exception handlers and error pages mapped together with them.
+ *
+ * @author Per Wendel
+ */
+public class RoutePipeline {
+
+    // For pipelines created without exception handlers and error pages
+    private static final ExceptionMapper NO_EXCEPTION_HANDLERS = new ExceptionMapper();
+    private static final CustomErrorPages NO_ERROR_PAGES = new CustomErrorPages();
+
+    private List<RouteMatch> beforeFilters;
+    private RouteMatch route;
+    private List<RouteMatch> afterFilters;
+    private String allow;
+    private ExceptionMapper exceptionMapper;
+    private CustomErrorPages errorPages;
+
+    public RoutePipeline(List<RouteMatch> beforeFilters, RouteMatch route, List<RouteMatch> afterFilters) {
+        this(beforeFilters, route, afterFilters, null);
+    }
+
+    public RoutePipeline(List<RouteMatch> beforeFilters,
+                         RouteMatch route,
+                         List<RouteMatch> afterFilters,
+                         String allow) {
+        this(beforeFilters, route, afterFilters, allow, NO_EXCEPTION_HANDLERS, NO_ERROR_PAGES);
+    }
+
+    public RoutePipeline(List<RouteMatch> beforeFilters,
+                         RouteMatch route,
+                         List<RouteMatch> afterFilters,
+                         String allow,
+                         ExceptionMapper exceptionMapper,
+                         CustomErrorPages errorPages) {
+        this.beforeFilters = beforeFilters;
+        this.route = route;
+        this.afterFilters = afterFilters;
+        this.allow = allow;
+        this.exceptionMapper = exceptionMapper;
+        this.errorPages = errorPages;
+    }
+
+    /**
+     * @return the matching before filters
+     */
+    public List<RouteMatch> getBeforeFilters() {
+        return beforeFilters;
+    }
+
+    /**
+     * @return the matching route or null if no route matches
+     */
+    public RouteMatch getRoute() {
+        return route;
+    }
+
+    /**
+     * @return the matching after filters
+     */
+    public List<RouteMatch> getAfterFilters() {
+        return afterFilters;
+    }
+
+    /**
+     * @return true if neither a route nor a filter matches and no route is mapped for another http method
+     */
+    public boolean isEmpty() {
+        return route == null && allow == null && beforeFilters.isEmpty() && afterFilters.isEmpty();
+    }
+
+    /**
+     * @return the value of the Allow header if routes are mapped for the path but not for the http method,
+     * otherwise null
+     */
+    public String getAllow() {
+        return allow;
+    }
+
+    /**
+     * @return the exception handlers mapped when the pipeline was matched
+     */
+    public ExceptionMapper getExceptionMapper() {
+        return exceptionMapper;
+    }
+
+    /**
+     * @return the error pages mapped when the pipeline was matched
+     */
+    public CustomErrorPages getErrorPages() {
+        return errorPages;
+    }
+
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2016 - Per Wendel
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spark.serialization;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletionException;
+
+import spark.BodyPublisher;
+
+/**
+ * Body publisher serializer, waits for each chunk in turn. Only used where the body can't be written asynchronously.
+ *
+ * @author Per Wendel
+ */
+class BodyPublisherSerializer extends Serializer {
+
+    @Override
+    public boolean canProcess(Object element) {
+        return element instanceof BodyPublisher;
+    }
+
+    @Override
+    public void process(OutputStream outputStream, Object element) throws IOException {
+        BodyPublisher publisher = (BodyPublisher) element;
+        try {
+            ByteBuffer chunk;
+            while ((chunk = publisher.next().toCompletableFuture().join()) != null) {
+                write(outputStream, chunk);
+            }
+        } catch (CompletionException e) {
+            publisher.cancel();
+            throw new IOException("The body publisher failed", e.getCause());
+        } catch (IOException | RuntimeException e) {
+            publisher.cancel();
+            throw e;
+        }
+    }
+
+    /**
+     * Writes the remaining bytes of a chunk
+     */
+    static void write(OutputStream outputStream, ByteBuffer chunk) throws IOException {
+        if (chunk.hasArray()) {
+            outputStream.write(chunk.array(), chunk.arrayOffset() + chunk.position(), chunk.remaining());
+            chunk.position(chunk.limit());
+        } else {
+            byte[] bytes = new byte[chunk.remaining()];
+            chunk.get(bytes);
+            outputStream.write(bytes);
+        }
+    }
+
+}
@@ -20,11 +20,12 @@ import java.io.IOException;
 import java.io.OutputStream;
 
 /**
- * Class that serializers and writes the result to given output stream.
+ * Class that serializers and writes the result to given output stream. Can be chained, or registered for the
+ * types it processes in a {@link SerializerRegistry}.
  *
  * @author alex
  */
-public abstract class Serializer {
+public abstract class Serializer implements TypeSerializer<Object> {
 
     private Serializer next;
 
@@ -69,5 +70,6 @@ public abstract class Serializer {
      * @param element      the element.
      * @throws IOException In the case of IO error.
      */
+    @Override
     public abstract void process(OutputStream outputStream, Object element) throws IOException;
 }
@@ -21,7 +21,11 @@ import java.io.OutputStream;
 
 /**
  * Chain of serializers for the output.
+ *
+ * @deprecated bodies are serialized by a {@link SerializerRegistry}, resolving the serializer from the body type
+ * instead of asking each serializer in turn
  */
+@Deprecated
 public final class SerializerChain {
 
     private Serializer root;
@@ -33,8 +37,14 @@ public final class SerializerChain {
 
         DefaultSerializer defaultSerializer = new DefaultSerializer();
 
+        BodyPublisherSerializer bodyPublisherSerializer = new BodyPublisherSerializer();
+        bodyPublisherSerializer.setNext(defaultSerializer);
+
+        StreamingBodySerializer streamingBodySerializer = new StreamingBodySerializer();
+        streamingBodySerializer.setNext(bodyPublisherSerializer);
+
         InputStreamSerializer inputStreamSerializer = new InputStreamSerializer();
-        inputStreamSerializer.setNext(defaultSerializer);
+        inputStreamSerializer.setNext(streamingBodySerializer);
 
         BytesSerializer bytesSerializer = new BytesSerializer();
         bytesSerializer.setNext(inputStreamSerializer);
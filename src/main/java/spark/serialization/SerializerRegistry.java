@@ -0,0 +1,147 @@
+/*
+ * Copyright 2016 - Per Wendel
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spark.serialization;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import spark.BodyPublisher;
+import spark.StreamingBody;
+
+/**
+ * The serializers writing response bodies, by body type. The serializer of a body is the one registered for its
+ * class, else for the interfaces the class implements, else for its superclass looked up the same way, and the
+ * serializer writing the result of toString if none is registered for any of them.
+ * The serializer resolved for each body class is cached in a {@link ClassValue}, so writing a body doesn't walk a
+ * chain of instanceof checks. Registering a serializer starts over with a new cache.
+ * Serializers for byte arrays, ByteBuffers, Strings, InputStreams, {@link StreamingBody} and {@link BodyPublisher}
+ * are registered to begin with, and can be replaced.
+ *
+ * @author Per Wendel
+ */
+public final class SerializerRegistry {
+
+    /**
+     * The registry used when Spark runs in a servlet container
+     */
+    public static final SerializerRegistry servletInstance = new SerializerRegistry();
+
+    private static final TypeSerializer<Object> DEFAULT = new DefaultSerializer();
+
+    private volatile Resolution resolution;
+
+    /**
+     * Creates a registry with the serializers of the built in body types
+     */
+    public SerializerRegistry() {
+        Map<Class<?>, TypeSerializer<?>> serializers = new HashMap<>();
+        serializers.put(byte[].class, new BytesSerializer());
+        serializers.put(ByteBuffer.class, (TypeSerializer<ByteBuffer>) (outputStream, buffer) ->
+                BodyPublisherSerializer.write(outputStream, buffer.duplicate()));
+        serializers.put(String.class, (TypeSerializer<String>) (outputStream, string) ->
+                outputStream.write(string.getBytes(StandardCharsets.UTF_8)));
+        serializers.put(InputStream.class, new InputStreamSerializer());
+        serializers.put(StreamingBody.class, new StreamingBodySerializer());
+        serializers.put(BodyPublisher.class, new BodyPublisherSerializer());
+        this.resolution = new Resolution(serializers);
+    }
+
+    /**
+     * Registers the serializer of a body type, replacing the one registered for the type before
+     *
+     * @param type       the body type, a class or an interface
+     * @param serializer the serializer
+     * @param <T>        the body type
+     */
+    public synchronized <T> void register(Class<T> type, TypeSerializer<? super T> serializer) {
+        Map<Class<?>, TypeSerializer<?>> serializers = new HashMap<>(resolution.serializers);
+        serializers.put(type, serializer);
+        this.resolution = new Resolution(serializers);
+    }
+
+    /**
+     * @param type the body class
+     * @return the serializer of bodies of the class
+     */
+    public TypeSerializer<Object> serializerFor(Class<?> type) {
+        return resolution.get(type);
+    }
+
+    /**
+     * Serializes a body with the serializer of its class
+     *
+     * @param outputStream the output stream
+     * @param element      the body
+     * @throws IOException in the case of IO error
+     */
+    public void process(OutputStream outputStream, Object element) throws IOException {
+        serializerFor(element.getClass()).process(outputStream, element);
+    }
+
+    /**
+     * Resolves the serializers of body classes from a snapshot of the registered serializers, the first time each
+     * class is written
+     */
+    private static final class Resolution extends ClassValue<TypeSerializer<Object>> {
+
+        private final Map<Class<?>, TypeSerializer<?>> serializers;
+
+        private Resolution(Map<Class<?>, TypeSerializer<?>> serializers) {
+            this.serializers = serializers;
+        }
+
+        @Override
+        protected TypeSerializer<Object> computeValue(Class<?> type) {
+            for (Class<?> current = type; current != null; current = current.getSuperclass()) {
+                TypeSerializer<Object> serializer = registered(current);
+                if (serializer != null) {
+                    return serializer;
+                }
+                serializer = forInterfaces(current);
+                if (serializer != null) {
+                    return serializer;
+                }
+            }
+            return DEFAULT;
+        }
+
+        private TypeSerializer<Object> forInterfaces(Class<?> type) {
+            for (Class<?> implemented : type.getInterfaces()) {
+                TypeSerializer<Object> serializer = registered(implemented);
+                if (serializer == null) {
+                    serializer = forInterfaces(implemented);
+                }
+                if (serializer != null) {
+                    return serializer;
+                }
+            }
+            return null;
+        }
+
+        @SuppressWarnings("unchecked")
+        private TypeSerializer<Object> registered(Class<?> type) {
+            // Registered for the type, so it is only handed bodies of the type
+            return (TypeSerializer<Object>) serializers.get(type);
+        }
+    }
+
+}
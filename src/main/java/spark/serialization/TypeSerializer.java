@@ -0,0 +1,40 @@
+/*
+ * Copyright 2016 - Per Wendel
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spark.serialization;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes response bodies of a type to the output stream, registered for the type in a {@link SerializerRegistry}.
+ *
+ * @param <T> the body type
+ * @author Per Wendel
+ */
+@FunctionalInterface
+public interface TypeSerializer<T> {
+
+    /**
+     * Serializes a body to the output stream
+     *
+     * @param outputStream the output stream, the response stream or a gzip stream wrapping it
+     * @param element      the body
+     * @throws IOException in the case of IO error
+     */
+    void process(OutputStream outputStream, T element) throws IOException;
+
+}
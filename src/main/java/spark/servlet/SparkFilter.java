@@ -34,6 +34,7 @@ import org.slf4j.LoggerFactory;
 import spark.globalstate.ServletFlag;
 import spark.http.matching.MatcherFilter;
 import spark.route.ServletRoutes;
+import spark.serialization.SerializerRegistry;
 import spark.staticfiles.StaticFilesConfiguration;
 import spark.utils.StringUtils;
 
@@ -72,6 +73,7 @@ public class SparkFilter implements Filter {
         filterPath = FilterTools.getFilterPath(filterConfig);
 
         matcherFilter = new MatcherFilter(ServletRoutes.get(), StaticFilesConfiguration.servletInstance, true, false);
+        matcherFilter.setSerializers(SerializerRegistry.servletInstance);
     }
 
     /**
@@ -0,0 +1,407 @@
+/*
+ * Copyright 2016 - Per Wendel
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spark.sse;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+
+/**
+ * Sends server-sent events to one client. Events are encoded as 'text/event-stream' frames and put in a bounded
+ * queue, the queue is written with non-blocking IO whenever the connection can take more, so no thread is held by
+ * the connection. Events can be sent from any thread.
+ * <p>
+ * A comment is sent as heartbeat when no event was sent for a while, to keep proxies from closing the connection
+ * and to notice clients that are gone.
+ *
+ * @author Per Wendel
+ */
+public final class SseEmitter {
+
+    private static final org.slf4j.Logger LOG = org.slf4j.LoggerFactory.getLogger(SseEmitter.class);
+
+    /**
+     * The default heartbeat interval
+     */
+    public static final long DEFAULT_HEARTBEAT_MILLIS = TimeUnit.SECONDS.toMillis(15);
+
+    /**
+     * The default number of events that can wait to be written
+     */
+    public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+
+    private static final byte[] HEARTBEAT = ":\n\n".getBytes(StandardCharsets.UTF_8);
+
+    private final String lastEventId;
+
+    private final Queue<byte[]> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final List<Runnable> closeListeners = new CopyOnWriteArrayList<>();
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    private volatile int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+    private volatile long heartbeatMillis = DEFAULT_HEARTBEAT_MILLIS;
+    private volatile long lastSent = System.nanoTime();
+    private volatile boolean closing;
+
+    // Guarded by this
+    private AsyncContext asyncContext;
+    private ScheduledFuture<?> heartbeat;
+
+    // Guarded by queue, the lock writes are done under
+    private ServletOutputStream out;
+    private ServletOutputStream started;
+    private boolean unflushed;
+
+    SseEmitter(String lastEventId) {
+        this.lastEventId = lastEventId;
+    }
+
+    /**
+     * @return the id of the last event the client got before it lost the connection, sent in the 'Last-Event-ID'
+     * header when it reconnects, or null for a new connection
+     */
+    public String lastEventId() {
+        return lastEventId;
+    }
+
+    /**
+     * Sends an event with only data
+     *
+     * @param data the data, can contain line breaks
+     * @return true if the event was queued, false if the queue is full or the connection is closed
+     */
+    public boolean send(String data) {
+        return send(null, null, data);
+    }
+
+    /**
+     * Sends a named event
+     *
+     * @param event the event name or null
+     * @param data  the data, can contain line breaks
+     * @return true if the event was queued, false if the queue is full or the connection is closed
+     */
+    public boolean send(String event, String data) {
+        return send(null, event, data);
+    }
+
+    /**
+     * Sends an event with an id, the client sends the id of the last event it got when it reconnects
+     *
+     * @param id    the event id or null
+     * @param event the event name or null
+     * @param data  the data, can contain line breaks
+     * @return true if the event was queued, false if the queue is full or the connection is closed
+     */
+    public boolean send(String id, String event, String data) {
+        return offer(frame(id, event, data));
+    }
+
+    /**
+     * Sets the interval of heartbeats, 0 disables them
+     *
+     * @param interval the interval
+     * @param unit     the unit of the interval
+     */
+    public synchronized void heartbeat(long interval, TimeUnit unit) {
+        heartbeatMillis = unit.toMillis(interval);
+        if (asyncContext != null) {
+            scheduleHeartbeat();
+        }
+    }
+
+    /**
+     * Sets the number of events that can wait to be written to a slow client before send starts to fail
+     *
+     * @param queueCapacity the capacity
+     */
+    public void queueCapacity(int queueCapacity) {
+        if (queueCapacity < 1) {
+            throw new IllegalArgumentException("The queue capacity must be positive");
+        }
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * Adds a listener run once when the connection is closed, by either side
+     *
+     * @param listener the listener
+     */
+    public void onClose(Runnable listener) {
+        closeListeners.add(listener);
+        if (closed.get() && closeListeners.remove(listener)) {
+            listener.run();
+        }
+    }
+
+    /**
+     * @return true until the connection is closed or closing
+     */
+    public boolean isOpen() {
+        return !closing;
+    }
+
+    /**
+     * Closes the connection once the queued events are written
+     */
+    public void close() {
+        closing = true;
+        drain();
+    }
+
+    /**
+     * Starts writing to the response
+     */
+    synchronized void start(AsyncContext asyncContext) throws IOException {
+        this.asyncContext = asyncContext;
+        asyncContext.addListener(new CompletionListener());
+
+        ServletOutputStream outputStream = asyncContext.getResponse().getOutputStream();
+        synchronized (queue) {
+            // Written to once the container calls the listener, Jetty fails writes from other threads made before
+            // the dispatch has returned
+            started = outputStream;
+        }
+        outputStream.setWriteListener(new QueueWriter());
+
+        scheduleHeartbeat();
+    }
+
+    private boolean offer(byte[] frame) {
+        if (closing) {
+            return false;
+        }
+        if (queued.incrementAndGet() > queueCapacity) {
+            queued.decrementAndGet();
+            return false;
+        }
+        queue.add(frame);
+        lastSent = System.nanoTime();
+        drain();
+        return true;
+    }
+
+    private void drain() {
+        boolean drainedForClose = false;
+        IOException failure = null;
+
+        synchronized (queue) {
+            if (out == null) {
+                return;
+            }
+            try {
+                while (out.isReady()) {
+                    byte[] frame = queue.poll();
+
+                    if (frame != null) {
+                        queued.decrementAndGet();
+                        out.write(frame);
+                        unflushed = true;
+                    } else if (unflushed) {
+                        unflushed = false;
+                        out.flush();
+                    } else {
+                        if (closing) {
+                            out = null;
+                            drainedForClose = true;
+                        }
+                        break;
+                    }
+                }
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+
+        // Completed outside the queue lock, the lock order is this before queue
+        if (failure != null) {
+            failed(failure);
+        } else if (drainedForClose) {
+            complete();
+        }
+    }
+
+    private void failed(Throwable t) {
+        LOG.debug("Server-sent events connection failed", t);
+        closing = true;
+        synchronized (queue) {
+            out = null;
+            started = null;
+            queue.clear();
+            queued.set(0);
+        }
+        complete();
+    }
+
+    private synchronized void complete() {
+        try {
+            asyncContext.complete();
+        } catch (IllegalStateException e) {
+            // Already completed by the container
+        }
+        closed();
+    }
+
+    private synchronized void scheduleHeartbeat() {
+        if (heartbeat != null) {
+            heartbeat.cancel(false);
+            heartbeat = null;
+        }
+        long interval = heartbeatMillis;
+        if (interval > 0 && !closing) {
+            heartbeat = Heartbeats.SCHEDULER.scheduleAtFixedRate(this::heartbeat, interval, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void heartbeat() {
+        if (System.nanoTime() - lastSent >= TimeUnit.MILLISECONDS.toNanos(heartbeatMillis)) {
+            offer(HEARTBEAT);
+        }
+    }
+
+    private void closed() {
+        closing = true;
+        if (closed.compareAndSet(false, true)) {
+            synchronized (this) {
+                if (heartbeat != null) {
+                    heartbeat.cancel(false);
+                }
+            }
+            for (Runnable listener : closeListeners) {
+                if (closeListeners.remove(listener)) {
+                    runSafely(listener);
+                }
+            }
+        }
+    }
+
+    private static void runSafely(Runnable listener) {
+        try {
+            listener.run();
+        } catch (RuntimeException e) {
+            LOG.warn("Exception in server-sent events close listener", e);
+        }
+    }
+
+    /**
+     * Encodes an event as a 'text/event-stream' frame
+     */
+    static byte[] frame(String id, String event, String data) {
+        StringBuilder frame = new StringBuilder();
+
+        if (id != null) {
+            field(frame, "id", id);
+        }
+        if (event != null) {
+            field(frame, "event", event);
+        }
+        if (data != null) {
+            // Each line of the data gets its own field, the client joins them with '\n'
+            int start = 0;
+            for (int i = 0; i < data.length(); i++) {
+                char c = data.charAt(i);
+                if (c == '\n' || c == '\r') {
+                    frame.append("data:").append(data, start, i).append('\n');
+                    if (c == '\r' && i + 1 < data.length() && data.charAt(i + 1) == '\n') {
+                        i++;
+                    }
+                    start = i + 1;
+                }
+            }
+            frame.append("data:").append(data, start, data.length()).append('\n');
+        }
+        return frame.append('\n').toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void field(StringBuilder frame, String name, String value) {
+        if (value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0) {
+            throw new IllegalArgumentException("The event " + name + " can't contain line breaks");
+        }
+        frame.append(name).append(':').append(value).append('\n');
+    }
+
+    private class QueueWriter implements WriteListener {
+
+        @Override
+        public void onWritePossible() {
+            synchronized (queue) {
+                if (started != null) {
+                    out = started;
+                    started = null;
+                }
+            }
+            drain();
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            failed(t);
+        }
+    }
+
+    private class CompletionListener implements AsyncListener {
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            closed();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            close();
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            failed(event.getThrowable());
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            //
+        }
+    }
+
+    /**
+     * One thread sends the heartbeats of all connections, sending is only queueing and a non-blocking write.
+     */
+    private static final class Heartbeats {
+
+        private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "spark-sse-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2016 - Per Wendel
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spark.sse;
+
+import spark.Request;
+
+/**
+ * Handles a server-sent events connection, see {@link spark.Service#sse(String, SseHandler)}.
+ *
+ * @author Per Wendel
+ */
+@FunctionalInterface
+public interface SseHandler {
+
+    /**
+     * Invoked when a client connects. The handler keeps the emitter, e.g. in a registry of subscribers, and sends
+     * events through it for as long as the connection is open. Events sent before the handler returns are written
+     * once the response is started. A client reconnecting after a lost connection sends the id of the last event it
+     * got, see {@link SseEmitter#lastEventId()}, so that the handler can resend what was missed.
+     *
+     * @param request the request that opened the connection
+     * @param emitter the emitter sending events to the client
+     * @throws Exception to answer the request with an error instead of opening the event stream
+     */
+    void handle(Request request, SseEmitter emitter) throws Exception;
+
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2016 - Per Wendel
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spark.sse;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.http.HttpServletRequest;
+
+import spark.Request;
+import spark.Response;
+import spark.Route;
+
+/**
+ * Route opening a server-sent events connection. It hands an emitter to the handler, then starts async processing
+ * and leaves the response to the emitter. HEAD requests are answered with the headers of the stream, without
+ * opening it.
+ *
+ * @author Per Wendel
+ */
+public final class SseRoute implements Route {
+
+    private static final String LAST_EVENT_ID_HEADER = "Last-Event-ID";
+    private static final String HEAD = "HEAD";
+    private static final String EVENT_STREAM_TYPE = "text/event-stream;charset=utf-8";
+
+    private final SseHandler handler;
+
+    private SseRoute(SseHandler handler) {
+        this.handler = handler;
+    }
+
+    /**
+     * Creates a route for a server-sent events handler
+     *
+     * @param handler the handler
+     * @return the route
+     */
+    public static SseRoute create(SseHandler handler) {
+        return new SseRoute(handler);
+    }
+
+    @Override
+    public Object handle(Request request, Response response) throws Exception {
+        HttpServletRequest httpRequest = request.raw();
+
+        if (HEAD.equals(request.requestMethod())) {
+            setHeaders(response);
+            return "";
+        }
+
+        if (!httpRequest.isAsyncSupported()) {
+            throw new IllegalStateException("Server-sent events need a container that allows async processing");
+        }
+
+        SseEmitter emitter = new SseEmitter(request.headers(LAST_EVENT_ID_HEADER));
+        handler.handle(request, emitter);
+
+        setHeaders(response);
+
+        AsyncContext asyncContext = httpRequest.startAsync();
+        asyncContext.setTimeout(0);
+        emitter.start(asyncContext);
+
+        return null;
+    }
+
+    private static void setHeaders(Response response) {
+        response.type(EVENT_STREAM_TYPE);
+        response.header("Cache-Control", "no-cache");
+    }
+
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2016 - Per Wendel
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package spark.utils;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+
+import spark.requestbody.BodyBuffer;
+import spark.requestbody.BodyLimitException;
+import spark.requestbody.BodyMemoryBudget;
+import spark.requestbody.RequestBodyConfiguration;
+
+/**
+ * Reads a request body with non-blocking IO, as the container hands over the data. The request must be in async
+ * mode. The chunks are written to a {@link BodyBuffer}, so the body is kept in memory or written to a temporary file
+ * as when it is read blocking.
+ *
+ * @author Per Wendel
+ */
+public final class AsyncBodyReader implements ReadListener {
+
+    private static final int CHUNK_SIZE = 8192;
+
+    private final ServletInputStream inputStream;
+    private final BodyBuffer.Writer writer;
+    private final CompletableFuture<BodyBuffer> body = new CompletableFuture<>();
+    private final byte[] chunk = new byte[CHUNK_SIZE];
+
+    private AsyncBodyReader(ServletInputStream inputStream, BodyBuffer.Writer writer) {
+        this.inputStream = inputStream;
+        this.writer = writer;
+    }
+
+    /**
+     * Starts reading a body
+     *
+     * @param inputStream   the input stream of a request in async mode
+     * @param contentLength the content length of the request or -1 if unknown
+     * @return a stage completing with the body once all of it has been read
+     */
+    public static CompletionStage<byte[]> read(ServletInputStream inputStream, long contentLength) {
+        return read(inputStream, contentLength, new RequestBodyConfiguration(), -1).thenApply(read -> {
+            try (BodyBuffer buffer = read) {
+                return buffer.toByteArray();
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        });
+    }
+
+    /**
+     * Starts reading a body that may not be larger than a limit. The memory the body is kept in is reserved from
+     * the {@link BodyMemoryBudget}, without waiting since that would block a container thread, until the buffer is
+     * closed.
+     *
+     * @param inputStream   the input stream of a request in async mode
+     * @param contentLength the content length of the request or -1 if unknown
+     * @param configuration the buffering configuration
+     * @param maxSize       the largest body accepted or -1 for no limit
+     * @return a stage completing with the body once all of it has been read, or failing with
+     * {@link BodyLimitException} if it is larger than the limit or the budget is used up
+     */
+    public static CompletionStage<BodyBuffer> read(ServletInputStream inputStream,
+                                                   long contentLength,
+                                                   RequestBodyConfiguration configuration,
+                                                   long maxSize) {
+        try {
+            AsyncBodyReader reader = new AsyncBodyReader(inputStream,
+                                                         BodyBuffer.writer(contentLength, configuration, maxSize));
+            inputStream.setReadListener(reader);
+            return reader.body;
+        } catch (IOException e) {
+            CompletableFuture<BodyBuffer> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+    }
+
+    @Override
+    public void onDataAvailable() throws IOException {
+        int read;
+        while (!body.isDone() && inputStream.isReady() && (read = inputStream.read(chunk)) != -1) {
+            try {
+                writer.write(chunk, 0, read);
+            } catch (IOException e) {
+                onError(e);
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void onAllDataRead() {
+        if (body.isDone()) {
+            return;
+        }
+        try {
+            BodyBuffer buffer = writer.finish();
+            if (!body.complete(buffer)) {
+                buffer.close();
+            }
+        } catch (IOException e) {
+            onError(e);
+        }
+    }
+
+    @Override
+    public void onError(Throwable t) {
+        if (body.completeExceptionally(t)) {
+            writer.discard();
+        }
+    }
+
+}
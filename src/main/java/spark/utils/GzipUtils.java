@@ -76,6 +76,19 @@ public class GzipUtils {
         return responseStream;
     }
 
+    /**
+     * Checks if the HTTP response wants GZIP, with a Content-Encoding header, and the request accepts it. For
+     * responses written without {@link #checkAndWrap(HttpServletRequest, HttpServletResponse, boolean)}.
+     *
+     * @param httpRequest  the HTTP servlet request.
+     * @param httpResponse the HTTP servlet response.
+     * @return true if the body should be compressed
+     */
+    public static boolean wantsGzip(HttpServletRequest httpRequest, HttpServletResponse httpResponse) {
+        return httpResponse.getHeaders(CONTENT_ENCODING).contains(GZIP)
+                && Collections.list(httpRequest.getHeaders(ACCEPT_ENCODING)).stream().anyMatch(STRING_MATCH);
+    }
+
     private static void addContentEncodingHeaderIfMissing(HttpServletResponse response, boolean wantsGzip) {
         if (!wantsGzip) {
             response.setHeader(CONTENT_ENCODING, GZIP);
@@ -16,6 +16,8 @@
  */
 package spark.utils;
 
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -42,6 +44,80 @@ public final class SparkUtils {
         return path;
     }
 
+    /**
+     * Finds the start of the next non-empty segment of a path, without allocating.
+     * Used together with {@link #segmentEnd(String, int)} to walk a path the same way as
+     * {@link #convertRouteToList(String)} splits it.
+     *
+     * @param path the path
+     * @param from the index to start searching from
+     * @return the index of the first character of the segment or -1 if there are no more segments
+     */
+    public static int nextSegmentStart(String path, int from) {
+        int length = path.length();
+        for (int i = from; i < length; i++) {
+            if (path.charAt(i) != '/') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Finds the end of the path segment starting at the provided index.
+     *
+     * @param path  the path
+     * @param start the index of the first character of the segment
+     * @return the index after the last character of the segment
+     */
+    public static int segmentEnd(String path, int start) {
+        int end = path.indexOf('/', start);
+        return end == -1 ? path.length() : end;
+    }
+
+    /**
+     * URL decodes a segment of a path as UTF-8. Segments without '%' or '+' are returned as they are.
+     *
+     * @param path  the path
+     * @param start the index of the first character of the segment
+     * @param end   the index after the last character of the segment
+     * @return the decoded segment
+     */
+    public static String decodeSegment(String path, int start, int end) {
+        String segment = path.substring(start, end);
+
+        for (int i = start; i < end; i++) {
+            char c = path.charAt(i);
+            if (c == '%' || c == '+') {
+                try {
+                    return URLDecoder.decode(segment, "UTF-8");
+                } catch (UnsupportedEncodingException e) {
+                    // UTF-8 is always supported
+                    throw new IllegalStateException(e);
+                }
+            }
+        }
+        return segment;
+    }
+
+    /**
+     * Finds where the name of a route param ends, a constraint in braces may follow the name, e.g. ':id{int}'.
+     *
+     * @param path  the route path
+     * @param start the index of the first character of the param segment
+     * @param end   the index after the last character of the param segment
+     * @return the index of the opening brace or end if the param has no constraint
+     */
+    public static int paramNameEnd(String path, int start, int end) {
+        if (end > start && path.charAt(end - 1) == '}') {
+            int brace = path.indexOf('{', start);
+            if (brace != -1 && brace < end) {
+                return brace;
+            }
+        }
+        return end;
+    }
+
     public static boolean isParam(String routePart) {
         return routePart.startsWith(":");
     }
@@ -0,0 +1,150 @@
+package spark;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import spark.util.SparkTestUtil;
+
+import static spark.Spark.after;
+import static spark.Spark.awaitInitialization;
+import static spark.Spark.exception;
+import static spark.Spark.get;
+import static spark.Spark.halt;
+import static spark.Spark.post;
+import static spark.Spark.stop;
+
+/**
+ * Tests routes returning a CompletionStage.
+ */
+public class AsyncRouteTest {
+
+    private static SparkTestUtil http;
+    private static ExecutorService executor;
+
+    @BeforeClass
+    public static void setup() {
+        http = new SparkTestUtil(4567);
+        executor = Executors.newFixedThreadPool(2);
+
+        get("/async/hello", (request, response) -> CompletableFuture.supplyAsync(() -> {
+            sleep(100);
+            return "Hello " + request.queryParams("name");
+        }, executor));
+
+        get("/async/halt", (request, response) -> CompletableFuture.supplyAsync(() -> {
+            throw halt(401, "Go away!");
+        }, executor));
+
+        get("/async/exception", (request, response) -> CompletableFuture.supplyAsync(() -> {
+            throw new UnsupportedOperationException("not yet");
+        }, executor));
+
+        get("/async/json", (request, response) -> CompletableFuture.completedFuture(42), model -> "{\"answer\":" + model + "}");
+
+        post("/async/body", (request, response) ->
+                request.bodyAsync().thenApply(body -> "Got " + new String(body, StandardCharsets.UTF_8)));
+
+        post("/async/ignored", (request, response) -> {
+            request.bodyAsync();
+            return "Answered right away";
+        });
+
+        post("/async/waited", (request, response) ->
+                "Got " + new String(request.bodyAsync().toCompletableFuture().get(5, TimeUnit.SECONDS),
+                                    StandardCharsets.UTF_8));
+
+        post("/async/callback", (request, response) -> {
+            request.bodyAsync().thenAccept(body -> response.header("X-Body-Length", String.valueOf(body.length)));
+            return "Answered right away";
+        });
+
+        exception(UnsupportedOperationException.class, (e, request, response) -> {
+            response.status(501);
+            response.body("Mapped " + e.getMessage());
+        });
+
+        after("/async/*", (request, response) -> response.header("X-After", "true"));
+
+        awaitInitialization();
+    }
+
+    @AfterClass
+    public static void stopServer() {
+        stop();
+        executor.shutdown();
+    }
+
+    @Test
+    public void testCompletedLater() throws Exception {
+        SparkTestUtil.UrlResponse response = http.get("/async/hello?name=Kevin");
+        Assert.assertEquals(200, response.status);
+        Assert.assertEquals("Hello Kevin", response.body);
+        Assert.assertEquals("true", response.headers.get("X-After"));
+    }
+
+    @Test
+    public void testHaltInStage() throws Exception {
+        SparkTestUtil.UrlResponse response = http.get("/async/halt");
+        Assert.assertEquals(401, response.status);
+        Assert.assertEquals("Go away!", response.body);
+    }
+
+    @Test
+    public void testExceptionInStageIsMapped() throws Exception {
+        SparkTestUtil.UrlResponse response = http.get("/async/exception");
+        Assert.assertEquals(501, response.status);
+        Assert.assertEquals("Mapped not yet", response.body);
+    }
+
+    @Test
+    public void testResultIsRendered() throws Exception {
+        SparkTestUtil.UrlResponse response = http.get("/async/json");
+        Assert.assertEquals(200, response.status);
+        Assert.assertEquals("{\"answer\":42}", response.body);
+    }
+
+    @Test
+    public void testBodyReadAsync() throws Exception {
+        SparkTestUtil.UrlResponse response = http.doMethod("POST", "/async/body", "Hello body");
+        Assert.assertEquals(200, response.status);
+        Assert.assertEquals("Got Hello body", response.body);
+    }
+
+    @Test
+    public void testBodyReadAsyncIgnored() throws Exception {
+        SparkTestUtil.UrlResponse response = http.doMethod("POST", "/async/ignored", "Hello body");
+        Assert.assertEquals(200, response.status);
+        Assert.assertEquals("Answered right away", response.body);
+    }
+
+    @Test
+    public void testBodyReadAsyncWaitedForInRoute() throws Exception {
+        SparkTestUtil.UrlResponse response = http.doMethod("POST", "/async/waited", "Hello body");
+        Assert.assertEquals(200, response.status);
+        Assert.assertEquals("Got Hello body", response.body);
+    }
+
+    @Test
+    public void testBodyReadAsyncNotReturned_isReadWhenRouteReturns() throws Exception {
+        SparkTestUtil.UrlResponse response = http.doMethod("POST", "/async/callback", "Hello body");
+        Assert.assertEquals(200, response.status);
+        Assert.assertEquals("Answered right away", response.body);
+        Assert.assertEquals("10", response.headers.get("X-Body-Length"));
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -1,5 +1,11 @@
 package spark;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
 import org.junit.AfterClass;
 import org.junit.Assert;
 import org.junit.BeforeClass;
@@ -7,7 +13,9 @@ import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import spark.requestbody.RequestBodyConfiguration;
 import spark.util.SparkTestUtil;
+import spark.utils.IOUtils;
 
 import static spark.Spark.after;
 import static spark.Spark.before;
@@ -28,6 +36,8 @@ public class BodyAvailabilityTest {
     @AfterClass
     public static void tearDown() {
         Spark.stop();
+        Spark.requestBodies.memoryThreshold(RequestBodyConfiguration.DEFAULT_MEMORY_THRESHOLD);
+        Spark.requestBodies.maxSize("/limited", -1);
 
         beforeBody = null;
         routeBody = null;
@@ -60,6 +70,39 @@ public class BodyAvailabilityTest {
             afterBody = req.body();
         });
 
+        // Bodies larger than 4 bytes go to a temporary file
+        Spark.requestBodies.memoryThreshold(4);
+
+        post("/upload", (req, res) -> {
+            Path target = Files.createTempFile("upload", ".txt");
+            try {
+                req.bodyTo(target);
+                String replayed = IOUtils.toString(req.raw().getInputStream());
+                return new String(Files.readAllBytes(target), StandardCharsets.UTF_8) + "|" + replayed;
+            } finally {
+                Files.delete(target);
+            }
+        });
+
+        // Spilled to a file by the filter, then read on another thread by the route
+        before("/spilled/async", (req, res) -> req.body());
+
+        post("/spilled/async", (req, res) -> req.bodyAsync().thenApplyAsync(body -> {
+            try {
+                return new String(body, StandardCharsets.UTF_8) + "|" + IOUtils.toString(req.raw().getInputStream());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }));
+
+        // Read with non-blocking IO and spilled to a file as it comes in
+        post("/spilled/nonblocking", (req, res) -> req.bodyAsync()
+                .thenApply(body -> new String(body, StandardCharsets.UTF_8)));
+
+        Spark.requestBodies.maxSize("/limited", 10);
+
+        post("/limited", (req, res) -> req.body());
+
         Spark.awaitInitialization();
     }
 
@@ -74,4 +117,39 @@ public class BodyAvailabilityTest {
         Assert.assertEquals(BODY_CONTENT, routeBody);
         Assert.assertEquals(BODY_CONTENT, afterBody);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testBodyToFileWhenSpilled() throws Exception {
+        SparkTestUtil.UrlResponse response = testUtil.doMethod("POST", "/upload", BODY_CONTENT);
+        Assert.assertEquals(200, response.status);
+        Assert.assertEquals(BODY_CONTENT + "|" + BODY_CONTENT, response.body);
+    }
+
+    @Test
+    public void testSpilledBodyReadAsync() throws Exception {
+        SparkTestUtil.UrlResponse response = testUtil.doMethod("POST", "/spilled/async", BODY_CONTENT);
+        Assert.assertEquals(200, response.status);
+        Assert.assertEquals(BODY_CONTENT + "|" + BODY_CONTENT, response.body);
+    }
+
+    @Test
+    public void testSpilledBodyReadNonBlocking() throws Exception {
+        SparkTestUtil.UrlResponse response = testUtil.doMethod("POST", "/spilled/nonblocking", BODY_CONTENT);
+        Assert.assertEquals(200, response.status);
+        Assert.assertEquals(BODY_CONTENT, response.body);
+    }
+
+    @Test
+    public void testBodyLargerThanRouteLimit() throws Exception {
+        SparkTestUtil.UrlResponse response = testUtil.doMethod("POST", "/limited", BODY_CONTENT);
+        Assert.assertEquals(413, response.status);
+        Assert.assertEquals(CustomErrorPages.PAYLOAD_TOO_LARGE, response.body);
+    }
+
+    @Test
+    public void testBodyWithinRouteLimit() throws Exception {
+        SparkTestUtil.UrlResponse response = testUtil.doMethod("POST", "/limited", "small");
+        Assert.assertEquals(200, response.status);
+        Assert.assertEquals("small", response.body);
+    }
+}
@@ -146,6 +146,17 @@ public class BooksIntegrationTest {
         getResponse("GET", "/books/" + bookId, null);
     }
 
+    @Test
+    public void wontDeleteAllBooks() throws IOException {
+        URL url = new URL("http://localhost:" + PORT + "/books");
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestMethod("DELETE");
+        connection.connect();
+
+        assertEquals(405, connection.getResponseCode());
+        assertEquals("GET, POST, HEAD, OPTIONS", connection.getHeaderField("Allow"));
+    }
+
     private static UrlResponse doMethod(String requestMethod, String path, String body) {
         UrlResponse response = new UrlResponse();
 
@@ -4,6 +4,8 @@ import org.junit.Test;
 import org.powermock.reflect.Whitebox;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 
 public class ExceptionMapperTest {
 
@@ -28,4 +30,36 @@ public class ExceptionMapperTest {
         ExceptionMapper exceptionMapper = ExceptionMapper.getInstance();
         assertEquals("Should be equals because ExceptionMapper is a singleton", Whitebox.getInternalState(ExceptionMapper.class, "defaultInstance"), exceptionMapper);
     }
+
+    @Test
+    public void testGetHandler_whenSuperclassMapped() {
+        ExceptionMapper exceptionMapper = new ExceptionMapper();
+        ExceptionHandlerImpl handler = handler(RuntimeException.class);
+        exceptionMapper.map(RuntimeException.class, handler);
+
+        assertSame(handler, exceptionMapper.getHandler(IllegalArgumentException.class));
+        assertSame(handler, exceptionMapper.getHandler(RuntimeException.class));
+        assertNull(exceptionMapper.getHandler(Exception.class));
+    }
+
+    @Test
+    public void testGetHandler_whenMappedAfterLookup() {
+        ExceptionMapper exceptionMapper = new ExceptionMapper();
+        ExceptionHandlerImpl handler = handler(RuntimeException.class);
+        exceptionMapper.map(RuntimeException.class, handler);
+        assertSame(handler, exceptionMapper.getHandler(IllegalArgumentException.class));
+
+        ExceptionHandlerImpl specific = handler(IllegalArgumentException.class);
+        exceptionMapper.map(IllegalArgumentException.class, specific);
+        assertSame("Should not use the handler resolved before", specific,
+                   exceptionMapper.getHandler(NumberFormatException.class));
+    }
+
+    private static ExceptionHandlerImpl handler(Class<? extends Exception> exceptionClass) {
+        return new ExceptionHandlerImpl(exceptionClass) {
+            @Override
+            public void handle(Exception exception, Request request, Response response) {
+            }
+        };
+    }
 }
@@ -38,4 +38,13 @@ public class FilterTest {
         Assert.assertEquals(404, response.status);
     }
 
+    @Test
+    public void testUnmappedPath() throws Exception {
+        UrlResponse response = testUtil.doMethod("GET", "/notmapped", null);
+
+        Assert.assertEquals(404, response.status);
+        Assert.assertEquals(CustomErrorPages.NOT_FOUND, response.body);
+        Assert.assertEquals("text/html;charset=utf-8", response.headers.get("Content-Type").replace(" ", ""));
+    }
+
 }
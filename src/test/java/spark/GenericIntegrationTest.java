@@ -277,6 +277,13 @@ public class GenericIntegrationTest {
         Assert.assertEquals("", response.body);
     }
 
+    @Test
+    public void testHiOptions() throws Exception {
+        UrlResponse response = testUtil.doMethod("OPTIONS", "/hi", null);
+        Assert.assertEquals(200, response.status);
+        Assert.assertEquals("GET, HEAD, OPTIONS", response.headers.get("Allow"));
+    }
+
     @Test
     public void testGetHiAfterFilter() throws Exception {
         UrlResponse response = testUtil.doMethod("GET", "/hi", null);
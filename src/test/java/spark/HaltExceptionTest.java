@@ -0,0 +1,45 @@
+package spark;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class HaltExceptionTest {
+
+    @Test
+    public void testOf_sharesOneInstancePerStatusCode() {
+        HaltException unauthorized = HaltException.of(401);
+
+        assertSame(unauthorized, HaltException.of(401));
+        assertNotSame(unauthorized, HaltException.of(403));
+        assertEquals(401, unauthorized.statusCode());
+        assertNull(unauthorized.body());
+    }
+
+    @Test
+    public void testOf_whenStatusCodeOutOfRange_thenNewInstances() {
+        HaltException halt = HaltException.of(999);
+
+        assertNotSame(halt, HaltException.of(999));
+        assertEquals(999, halt.statusCode());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testInitCause_whenShared_thenRejected() {
+        HaltException.of(401).initCause(new RuntimeException());
+    }
+
+    @Test
+    public void testInitCause_whenRejected_thenSharedInstanceUnchanged() {
+        try {
+            HaltException.of(402).initCause(new RuntimeException());
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        assertNull(HaltException.of(402).getCause());
+    }
+
+}
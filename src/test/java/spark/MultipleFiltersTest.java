@@ -37,6 +37,13 @@ public class MultipleFiltersTest {
             return ((User) request.attribute("user")).name();
         });
 
+        // Filters with different patterns share the request, each must see the params of its own match
+        before("/users/:name/*", (req, res) -> req.attribute("name", req.params(":name") + "," + req.splat()[0]));
+        before("/users/*/posts/:post", (req, res) -> req.attribute("post", req.splat()[0] + "," + req.params(":post")));
+
+        get("/users/:id/posts/:post", (request, response) ->
+                request.attribute("name") + "|" + request.attribute("post") + "|" + request.params(":id"));
+
         awaitInitialization();
     }
 
@@ -56,6 +63,13 @@ public class MultipleFiltersTest {
         }
     }
 
+    @Test
+    public void testFiltersWithDifferentParams() throws Exception {
+        SparkTestUtil.UrlResponse response = http.get("/users/kevin/posts/42");
+        Assert.assertEquals(200, response.status);
+        Assert.assertEquals("kevin,posts/42|kevin,42|kevin", response.body);
+    }
+
     private static Filter loadUser = (request, response) -> {
         User u = new User();
         u.name("Kevin");
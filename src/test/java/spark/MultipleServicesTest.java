@@ -72,6 +72,7 @@ public class MultipleServicesTest {
     public void testGetUniqueForSecondWithFirst() throws Exception {
         SparkTestUtil.UrlResponse response = firstClient.doMethod("GET", "/uniqueforsecond", null);
         Assert.assertEquals(404, response.status);
+        Assert.assertEquals("Error pages are mapped per service", CustomErrorPages.NOT_FOUND, response.body);
     }
 
     @Test
@@ -94,27 +95,63 @@ public class MultipleServicesTest {
         Assert.assertEquals("Content of css file", response.body);
     }
 
+    @Test
+    public void testExceptionHandlersArePerService() throws Exception {
+        SparkTestUtil.UrlResponse response = firstClient.doMethod("GET", "/fail", null);
+        Assert.assertEquals("Handled by first", response.body);
+
+        response = secondClient.doMethod("GET", "/fail", null);
+        Assert.assertEquals("Handled by second", response.body);
+    }
+
+    @Test
+    public void testHandlersMappedBeforeRoutes() throws Exception {
+        SparkTestUtil.UrlResponse response = secondClient.doMethod("GET", "/illegal", null);
+        Assert.assertEquals("Illegal state", response.body);
+
+        response = secondClient.doMethod("GET", "/missing", null);
+        Assert.assertEquals(404, response.status);
+        Assert.assertEquals("Nothing here", response.body);
+    }
+
     private static Service igniteFirstService() {
 
         Service http = ignite(); // I give the variable the name 'http' for the code to make sense when adding routes.
 
         http.get("/hello", (q, a) -> "Hello World!");
+        http.get("/fail", (q, a) -> {
+            throw new UnsupportedOperationException();
+        });
+        http.exception(UnsupportedOperationException.class, (e, q, a) -> a.body("Handled by first"));
 
         return http;
     }
 
     private static Service igniteSecondService() {
 
-        Service http = ignite()
-                .port(1234)
+        Service http = ignite();
+
+        // Mapped before any route, and before the server is configured
+        http.exception(IllegalStateException.class, (e, q, a) -> a.body("Illegal state"));
+        http.notFound("Nothing here");
+
+        http.port(1234)
                 .staticFileLocation("/public")
                 .threadPool(40);
 
         http.get("/hello", (q, a) -> "Hello World!");
         http.get("/uniqueforsecond", (q, a) -> "Bompton");
+        http.get("/illegal", (q, a) -> {
+            throw new IllegalStateException();
+        });
 
         http.redirect.any("/hi", "/hello");
 
+        http.get("/fail", (q, a) -> {
+            throw new UnsupportedOperationException();
+        });
+        http.exception(UnsupportedOperationException.class, (e, q, a) -> a.body("Handled by second"));
+
         return http;
     }
 
@@ -0,0 +1,124 @@
+package spark;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import spark.util.SparkTestUtil;
+
+import static spark.Spark.awaitInitialization;
+import static spark.Spark.before;
+import static spark.Spark.exception;
+import static spark.Spark.get;
+import static spark.Spark.notFound;
+import static spark.Spark.reload;
+import static spark.Spark.stop;
+
+/**
+ * Tests replacing all routes, filters, exception handlers and error pages at once.
+ */
+public class ReloadRoutesTest {
+
+    private static SparkTestUtil http;
+
+    private CountDownLatch started;
+    private CountDownLatch release;
+
+    @BeforeClass
+    public static void setup() {
+        http = new SparkTestUtil(4567);
+    }
+
+    @AfterClass
+    public static void stopServer() {
+        // Leaves no error pages nor exception handlers behind for other tests
+        reload(() -> {
+        });
+        stop();
+    }
+
+    @Before
+    public void mapVersionOne() {
+        started = new CountDownLatch(1);
+        release = new CountDownLatch(1);
+
+        reload(() -> {
+            before("/*", (request, response) -> response.header("X-Version", "1"));
+            get("/one", (request, response) -> "one");
+            get("/slow", (request, response) -> {
+                started.countDown();
+                release.await(5, TimeUnit.SECONDS);
+                throw new IllegalStateException("slow");
+            });
+            exception(IllegalStateException.class, (e, request, response) -> response.body("Handled by version 1"));
+            notFound("Not in version 1");
+        });
+        awaitInitialization();
+    }
+
+    @After
+    public void releaseSlow() {
+        release.countDown();
+    }
+
+    @Test
+    public void testReload() throws Exception {
+        reload(() -> {
+            get("/two", (request, response) -> "two");
+            notFound("Not in version 2");
+        });
+
+        SparkTestUtil.UrlResponse response = http.get("/two");
+        Assert.assertEquals(200, response.status);
+        Assert.assertEquals("two", response.body);
+        Assert.assertNull("the filter of version 1 is gone", response.headers.get("X-Version"));
+
+        response = http.get("/one");
+        Assert.assertEquals(404, response.status);
+        Assert.assertEquals("Not in version 2", response.body);
+    }
+
+    @Test
+    public void testFailedReloadReplacesNothing() throws Exception {
+        try {
+            reload(() -> {
+                get("/two", (request, response) -> "two");
+                throw new IllegalStateException("invalid configuration");
+            });
+            Assert.fail("Expected the reload to fail");
+        } catch (IllegalStateException e) {
+            Assert.assertEquals("invalid configuration", e.getMessage());
+        }
+
+        SparkTestUtil.UrlResponse response = http.get("/one");
+        Assert.assertEquals(200, response.status);
+        Assert.assertEquals("1", response.headers.get("X-Version"));
+        Assert.assertEquals(404, http.get("/two").status);
+    }
+
+    @Test
+    public void testRequestInFlightFinishesWithOldVersion() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<SparkTestUtil.UrlResponse> slow = executor.submit(() -> http.get("/slow"));
+        executor.shutdown();
+        Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        reload(() -> exception(IllegalStateException.class,
+                               (e, request, response) -> response.body("Handled by version 2")));
+        release.countDown();
+
+        SparkTestUtil.UrlResponse response = slow.get(5, TimeUnit.SECONDS);
+        Assert.assertEquals("Handled by version 1", response.body);
+        Assert.assertEquals(404, http.get("/slow").status);
+    }
+
+}
@@ -434,4 +434,79 @@ public class RequestTest {
                 protocol, request.protocol());
 
     }
+
+    @Test
+    public void testParamsAndSplat() {
+
+        RouteMatch match = new RouteMatch(null, "/users/:name/*", "/users/Bob%20S/a/b%2Bc/", "text/html");
+        Request request = new Request(match, servletRequest);
+
+        assertEquals("The param should be decoded", "Bob S", request.params("name"));
+        assertEquals("The param name should be case insensitive", "Bob S", request.params(":NAME"));
+        assertNull("A param not in the route should be null", request.params("id"));
+        assertArrayEquals("The last splat should take the rest of the path",
+                new String[] {"a/b+c"}, request.splat());
+        assertEquals("All params should be returned", Collections.singletonMap(":name", "Bob S"), request.params());
+
+    }
+
+    @Test
+    public void testParamsAndSplatAfterChangeMatch() {
+
+        request.changeMatch(new RouteMatch(null, "/*/:id/*", "/files/42/readme", "text/html"));
+
+        assertEquals("The param of the new match should be returned", "42", request.params("id"));
+        assertArrayEquals("The splat of the new match should be returned",
+                new String[] {"files", "readme"}, request.splat());
+
+    }
+
+    @Test
+    public void testParamsAndSplatWithoutMatch() {
+
+        Request request = new Request(servletRequest);
+
+        assertTrue("There should be no params", request.params().isEmpty());
+        assertNull("There should be no param", request.params("name"));
+        assertEquals("There should be no splat", 0, request.splat().length);
+
+    }
+
+    @Test
+    public void testTypedParams() {
+
+        RouteMatch match = new RouteMatch(null,
+                "/items/:id{int}/:owner{uuid}/:name{[a-z]+}",
+                "/items/42/123e4567-e89b-12d3-a456-426614174000/shoes",
+                "text/html");
+        Request request = new Request(match, servletRequest);
+
+        assertEquals("The int param should be an Integer", Integer.valueOf(42), request.params("id", Integer.class));
+        assertEquals("The uuid param should be a UUID",
+                UUID.fromString("123e4567-e89b-12d3-a456-426614174000"), request.params(":owner", UUID.class));
+        assertEquals("The param constrained by an expression should be a String",
+                "shoes", request.params("name", String.class));
+        assertEquals("The param should also be a String", "42", request.params("id"));
+        assertEquals("The constraint should not be part of the key", "42", request.params().get(":id"));
+
+    }
+
+    @Test
+    public void testTypedParams_areConvertedOnce() {
+
+        Request request = new Request(new RouteMatch(null, "/items/:id{int}", "/items/4242", "text/html"), servletRequest);
+
+        assertSame("The converted value should be cached", request.params("id", Integer.class), request.params("id", Integer.class));
+        assertNull("A missing param should be null", request.params("owner", Integer.class));
+        assertNull("A missing param should still be null", request.params("owner", Integer.class));
+
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTypedParams_whenTypeDoesNotMatch() {
+
+        Request request = new Request(new RouteMatch(null, "/items/:id{int}", "/items/42", "text/html"), servletRequest);
+        request.params("id", Long.class);
+
+    }
 }
@@ -13,6 +13,7 @@ import spark.ssl.SslStores;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 import static spark.Service.ignite;
 
 public class ServiceTest {
@@ -50,6 +51,34 @@ public class ServiceTest {
         service.halt(NOT_FOUND_STATUS_CODE, "error");
     }
 
+    @Test
+    public void testHalt_whenStatusCode_thenThrowSharedStacklessException() {
+        HaltException first = haltWith(NOT_FOUND_STATUS_CODE);
+        HaltException second = haltWith(NOT_FOUND_STATUS_CODE);
+
+        assertSame("Should throw one instance per status code", first, second);
+        assertEquals(NOT_FOUND_STATUS_CODE, first.statusCode());
+        assertEquals("Should not capture a stack trace", 0, first.getStackTrace().length);
+    }
+
+    @Test
+    public void testHalt_whenStatusCodeAndBodyContent_thenThrowStacklessException() {
+        try {
+            service.halt(NOT_FOUND_STATUS_CODE, "error");
+        } catch (HaltException e) {
+            assertEquals("error", e.body());
+            assertEquals("Should not capture a stack trace", 0, e.getStackTrace().length);
+        }
+    }
+
+    private HaltException haltWith(int status) {
+        try {
+            throw service.halt(status);
+        } catch (HaltException e) {
+            return e;
+        }
+    }
+
     @Test
     public void testIpAddress_whenInitializedFalse() {
         service.ipAddress(IP_ADDRESS);
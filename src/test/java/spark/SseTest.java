@@ -0,0 +1,131 @@
+package spark;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static spark.Spark.after;
+import static spark.Spark.awaitInitialization;
+import static spark.Spark.sse;
+import static spark.Spark.stop;
+
+/**
+ * Tests server-sent events routes.
+ */
+public class SseTest {
+
+    private static final CountDownLatch closed = new CountDownLatch(1);
+    private static final AtomicInteger opened = new AtomicInteger();
+
+    @BeforeClass
+    public static void setup() {
+        sse("/events", (request, emitter) -> {
+            emitter.onClose(closed::countDown);
+            emitter.send("resume", String.valueOf(emitter.lastEventId()));
+
+            // Sent from another thread once the connection is open
+            new Thread(() -> {
+                emitter.send("1", "tick", "first");
+                emitter.send("2", null, "second\nline");
+                emitter.close();
+            }).start();
+        });
+
+        sse("/heartbeat", (request, emitter) -> emitter.heartbeat(50, TimeUnit.MILLISECONDS));
+
+        sse("/counted", (request, emitter) -> {
+            opened.incrementAndGet();
+            emitter.close();
+        });
+
+        sse("/filtered", (request, emitter) -> {
+            emitter.send("only", "event");
+            new Thread(emitter::close).start();
+        });
+        after("/filtered", (request, response) -> response.body("Written over the stream"));
+
+        awaitInitialization();
+    }
+
+    @AfterClass
+    public static void stopServer() {
+        stop();
+    }
+
+    @Test
+    public void testEventStream() throws Exception {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:4567/events").openConnection();
+        connection.setRequestProperty("Last-Event-ID", "41");
+        connection.setReadTimeout(5000);
+
+        Assert.assertEquals(200, connection.getResponseCode());
+        Assert.assertEquals("text/event-stream;charset=utf-8", connection.getContentType());
+
+        StringBuilder stream = new StringBuilder();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                stream.append(line).append('\n');
+            }
+        }
+
+        Assert.assertEquals("event:resume\ndata:41\n\n"
+                                    + "id:1\nevent:tick\ndata:first\n\n"
+                                    + "id:2\ndata:second\ndata:line\n\n", stream.toString());
+        Assert.assertTrue(closed.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testHead_answersHeadersWithoutOpeningStream() throws Exception {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:4567/counted").openConnection();
+        connection.setRequestMethod("HEAD");
+        connection.setReadTimeout(5000);
+
+        Assert.assertEquals(200, connection.getResponseCode());
+        Assert.assertEquals("text/event-stream;charset=utf-8", connection.getContentType());
+        Assert.assertEquals(0, opened.get());
+    }
+
+    @Test
+    public void testBodySetByAfterFilter_isNotWrittenOverStream() throws Exception {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:4567/filtered").openConnection();
+        connection.setReadTimeout(5000);
+
+        StringBuilder stream = new StringBuilder();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                stream.append(line).append('\n');
+            }
+        }
+
+        Assert.assertEquals("event:only\ndata:event\n\n", stream.toString());
+    }
+
+    @Test
+    public void testHeartbeat() throws Exception {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:4567/heartbeat").openConnection();
+        connection.setReadTimeout(5000);
+
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8))) {
+            Assert.assertEquals(":", reader.readLine());
+            Assert.assertEquals("", reader.readLine());
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+}
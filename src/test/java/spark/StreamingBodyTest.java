@@ -0,0 +1,173 @@
+package spark;
+
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import spark.examples.gzip.GzipClient;
+import spark.util.SparkTestUtil;
+
+import static spark.Spark.after;
+import static spark.Spark.awaitInitialization;
+import static spark.Spark.get;
+import static spark.Spark.stop;
+
+/**
+ * Tests routes returning a StreamingBody, a BodyPublisher or records.
+ */
+public class StreamingBodyTest {
+
+    private static final int ROWS = 100000;
+
+    private static SparkTestUtil http;
+    private static ExecutorService executor;
+    private static volatile boolean recordsClosed;
+
+    @BeforeClass
+    public static void setup() {
+        http = new SparkTestUtil(4567);
+        executor = Executors.newSingleThreadExecutor();
+
+        get("/export", (request, response) -> (StreamingBody) out -> {
+            Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+            for (int i = 0; i < ROWS; i++) {
+                writer.write(i + ",row " + i + "\n");
+            }
+            writer.flush();
+        });
+
+        after("/export", (request, response) -> response.type("text/csv"));
+
+        // Chunks that are ready right away, enough to overflow the stack if each one was written in a callback
+        get("/publisher/ready", (request, response) -> new CountingPublisher(ROWS, null));
+
+        // Chunks produced on another thread
+        get("/publisher/later", (request, response) -> new CountingPublisher(100, executor));
+
+        // Compressed, with the deflater flushed whenever the publisher makes the writer wait
+        get("/publisher/gzip/ready", (request, response) -> {
+            response.header("Content-Encoding", "gzip");
+            return new CountingPublisher(ROWS, null);
+        });
+        get("/publisher/gzip/later", (request, response) -> {
+            response.header("Content-Encoding", "gzip");
+            return new CountingPublisher(100, executor);
+        });
+
+        get("/records/ndjson", (request, response) -> Stream.of(1, 2, 3).onClose(() -> recordsClosed = true),
+            model -> "{\"id\":" + model + "}");
+
+        get("/records/array", (request, response) -> Records.of(Arrays.asList(1, 2, 3).iterator()).asJsonArray(),
+            model -> "{\"id\":" + model + "}");
+
+        get("/records/csv", (request, response) -> Records.of(Stream.of("1,a", "2,b"))
+                .format("id,name\n", "\n", "\n")
+                .contentType("text/csv")
+                .flushEvery(1));
+
+        awaitInitialization();
+    }
+
+    @AfterClass
+    public static void stopServer() {
+        stop();
+        executor.shutdown();
+    }
+
+    @Test
+    public void testStreamedBody() throws Exception {
+        SparkTestUtil.UrlResponse response = http.get("/export");
+        Assert.assertEquals(200, response.status);
+        Assert.assertEquals("text/csv", response.headers.get("Content-Type"));
+        Assert.assertEquals("chunked", response.headers.get("Transfer-Encoding"));
+        Assert.assertTrue(response.body.startsWith("0,row 0\n1,row 1\n"));
+        Assert.assertTrue(response.body.endsWith((ROWS - 1) + ",row " + (ROWS - 1) + "\n"));
+    }
+
+    @Test
+    public void testPublisherWithReadyChunks() throws Exception {
+        SparkTestUtil.UrlResponse response = http.get("/publisher/ready");
+        Assert.assertEquals(200, response.status);
+        Assert.assertEquals(CountingPublisher.expected(ROWS), response.body);
+    }
+
+    @Test
+    public void testPublisherWithLaterChunks() throws Exception {
+        SparkTestUtil.UrlResponse response = http.get("/publisher/later");
+        Assert.assertEquals(200, response.status);
+        Assert.assertEquals(CountingPublisher.expected(100), response.body);
+    }
+
+    @Test
+    public void testPublisherWithGzip() throws Exception {
+        Assert.assertEquals(CountingPublisher.expected(ROWS),
+                            GzipClient.getAndDecompress("http://localhost:4567/publisher/gzip/ready"));
+        Assert.assertEquals(CountingPublisher.expected(100),
+                            GzipClient.getAndDecompress("http://localhost:4567/publisher/gzip/later"));
+    }
+
+    @Test
+    public void testRecordsAsNdjson() throws Exception {
+        SparkTestUtil.UrlResponse response = http.get("/records/ndjson");
+        Assert.assertEquals(200, response.status);
+        Assert.assertEquals("application/x-ndjson", response.headers.get("Content-Type"));
+        Assert.assertEquals("{\"id\":1}\n{\"id\":2}\n{\"id\":3}\n", response.body);
+        Assert.assertTrue(recordsClosed);
+    }
+
+    @Test
+    public void testRecordsAsJsonArray() throws Exception {
+        SparkTestUtil.UrlResponse response = http.get("/records/array");
+        Assert.assertEquals("application/json", response.headers.get("Content-Type"));
+        Assert.assertEquals("[{\"id\":1},{\"id\":2},{\"id\":3}]", response.body);
+    }
+
+    @Test
+    public void testRecordsAsCsv() throws Exception {
+        SparkTestUtil.UrlResponse response = http.get("/records/csv");
+        Assert.assertEquals("text/csv", response.headers.get("Content-Type"));
+        Assert.assertEquals("id,name\n1,a\n2,b\n", response.body);
+    }
+
+    private static class CountingPublisher implements BodyPublisher {
+
+        private final int count;
+        private final ExecutorService executor;
+        private int next;
+
+        CountingPublisher(int count, ExecutorService executor) {
+            this.count = count;
+            this.executor = executor;
+        }
+
+        static String expected(int count) {
+            StringBuilder expected = new StringBuilder();
+            for (int i = 0; i < count; i++) {
+                expected.append(i).append('\n');
+            }
+            return expected.toString();
+        }
+
+        @Override
+        public CompletionStage<ByteBuffer> next() {
+            ByteBuffer chunk = next < count ? ByteBuffer.wrap((next++ + "\n").getBytes(StandardCharsets.UTF_8)) : null;
+            if (executor == null) {
+                return CompletableFuture.completedFuture(chunk);
+            }
+            return CompletableFuture.supplyAsync(() -> chunk, executor);
+        }
+    }
+
+}
@@ -1,6 +1,7 @@
 package spark.customerrorpages;
 
 import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.AfterClass;
 import org.junit.Assert;
@@ -11,7 +12,9 @@ import spark.CustomErrorPages;
 import spark.Spark;
 import spark.util.SparkTestUtil;
 
+import static spark.Spark.errorPage;
 import static spark.Spark.get;
+import static spark.Spark.halt;
 import static spark.Spark.internalServerError;
 import static spark.Spark.notFound;
 
@@ -23,8 +26,12 @@ public class CustomErrorPagesTest {
     public static final String APPLICATION_JSON = "application/json";
     private static final String QUERY_PARAM_KEY = "qparkey";
 
+    private static final String CUSTOM_TOO_MANY_REQUESTS = "custom too many requests 429";
+
     static SparkTestUtil testUtil;
 
+    private static final AtomicInteger unavailableRenders = new AtomicInteger();
+
     @AfterClass
     public static void tearDown() {
         Spark.stop();
@@ -50,6 +57,14 @@ public class CustomErrorPagesTest {
             return CUSTOM_INTERNAL;
         });
 
+        get("/limited", (q, a) -> halt(429));
+        get("/teapot", (q, a) -> halt(418));
+        get("/unavailable", (q, a) -> halt(503));
+
+        errorPage(429, CUSTOM_TOO_MANY_REQUESTS);
+
+        errorPage(503, (request, response) -> "custom unavailable " + unavailableRenders.incrementAndGet(), true);
+
         Spark.awaitInitialization();
     }
 
@@ -81,4 +96,35 @@ public class CustomErrorPagesTest {
         Assert.assertEquals(500, response.status);
         Assert.assertEquals(CustomErrorPages.INTERNAL_ERROR, response.body);
     }
+
+    @Test
+    public void testCustomPageForHaltedStatus() throws Exception {
+        SparkTestUtil.UrlResponse response = testUtil.doMethod("GET", "/limited", null);
+        Assert.assertEquals(429, response.status);
+        Assert.assertEquals(CUSTOM_TOO_MANY_REQUESTS, response.body);
+        Assert.assertEquals(String.valueOf(CUSTOM_TOO_MANY_REQUESTS.length()), response.headers.get("Content-Length"));
+    }
+
+    @Test
+    public void testNoPageForHaltedStatusWithoutMapping() throws Exception {
+        SparkTestUtil.UrlResponse response = testUtil.doMethod("GET", "/teapot", null);
+        Assert.assertEquals(418, response.status);
+        Assert.assertEquals("", response.body);
+    }
+
+    @Test
+    public void testCachedRoutePage() throws Exception {
+        SparkTestUtil.UrlResponse first = testUtil.doMethod("GET", "/unavailable", null);
+        SparkTestUtil.UrlResponse second = testUtil.doMethod("GET", "/unavailable", null);
+        Assert.assertEquals(503, second.status);
+        Assert.assertEquals(first.body, second.body);
+        Assert.assertEquals(1, unavailableRenders.get());
+    }
+
+    @Test
+    public void testDefaultPageForAnyStatus() {
+        Assert.assertEquals("<html><body><h2>429 Too Many Requests</h2></body></html>",
+                            CustomErrorPages.defaultPageFor(429));
+        Assert.assertSame(CustomErrorPages.defaultEncodedPageFor(429), CustomErrorPages.defaultEncodedPageFor(429));
+    }
 }
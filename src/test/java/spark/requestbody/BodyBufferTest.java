@@ -0,0 +1,229 @@
+package spark.requestbody;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import spark.utils.IOUtils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BodyBufferTest {
+
+    private static final byte[] BODY = "0123456789abcdefghij".getBytes(StandardCharsets.UTF_8);
+
+    private RequestBodyConfiguration configuration;
+    private Path directory;
+
+    @Before
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("body-buffer-test");
+        configuration = new RequestBodyConfiguration();
+        configuration.tempDirectory(directory);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.delete(directory);
+    }
+
+    @Test
+    public void testRead_withContentLength_keepsExactArray() throws IOException {
+        BodyBuffer buffer = BodyBuffer.read(new ByteArrayInputStream(BODY), BODY.length, configuration);
+
+        assertFalse(buffer.isSpilled());
+        byte[] bytes = buffer.toByteArray();
+        assertArrayEquals(BODY, bytes);
+        assertSame("no copy of an exactly sized buffer", bytes, buffer.toByteArray());
+    }
+
+    @Test
+    public void testToByteArray_withoutContentLength_returnsExactCopy() throws IOException {
+        BodyBuffer buffer = BodyBuffer.read(new ByteArrayInputStream(BODY), -1, configuration);
+
+        byte[] bytes = buffer.toByteArray();
+        bytes[0] = 'x';
+        assertArrayEquals("the buffer is larger than the body, not shared", BODY, buffer.toByteArray());
+    }
+
+    @Test
+    public void testToByteArray_whenSpilled_reservesFromBudget() throws IOException {
+        configuration.memoryThreshold(8);
+        BodyMemoryBudget budget = BodyMemoryBudget.getInstance();
+
+        try (BodyBuffer buffer = BodyBuffer.read(new ByteArrayInputStream(BODY), -1, configuration)) {
+            budget.configure(100, 0);
+            long others = budget.reserve(100 - BODY.length + 1, false);
+            try {
+                buffer.toByteArray();
+                fail("Expected the budget to be used up");
+            } catch (BodyLimitException e) {
+                assertEquals(503, e.statusCode());
+            }
+            assertEquals("nothing kept of the failed read", others, budget.reserved());
+
+            budget.release(others);
+            assertArrayEquals(BODY, buffer.toByteArray());
+            assertEquals("held until the buffer is closed", BODY.length, budget.reserved());
+
+            buffer.close();
+            assertEquals(0, budget.reserved());
+        } finally {
+            budget.configure(-1, 0);
+        }
+    }
+
+    @Test
+    public void testRead_withoutContentLength() throws IOException {
+        BodyBuffer buffer = BodyBuffer.read(new ByteArrayInputStream(BODY), -1, configuration);
+
+        assertFalse(buffer.isSpilled());
+        assertArrayEquals(BODY, buffer.toByteArray());
+    }
+
+    @Test
+    public void testRead_aboveThreshold_spillsToFile() throws IOException {
+        configuration.memoryThreshold(8);
+
+        BodyBuffer buffer = BodyBuffer.read(new ByteArrayInputStream(BODY), -1, configuration);
+
+        assertTrue(buffer.isSpilled());
+        assertEquals(BODY.length, buffer.size());
+        assertArrayEquals(BODY, read(buffer.newInputStream()));
+        assertArrayEquals("can be read again", BODY, read(buffer.newInputStream()));
+
+        buffer.close();
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals("temporary file deleted", 0, files.count());
+        }
+    }
+
+    @Test
+    public void testRead_contentLengthAboveThreshold_spillsToFile() throws IOException {
+        configuration.memoryThreshold(8);
+
+        BodyBuffer buffer = BodyBuffer.read(new ByteArrayInputStream(BODY), BODY.length, configuration);
+
+        assertTrue(buffer.isSpilled());
+        assertArrayEquals(BODY, buffer.toByteArray());
+        buffer.close();
+    }
+
+    @Test
+    public void testTransferTo() throws IOException {
+        configuration.memoryThreshold(8);
+        Path target = Files.createTempFile("body-buffer-target", ".tmp");
+
+        try (BodyBuffer buffer = BodyBuffer.read(new ByteArrayInputStream(BODY), -1, configuration)) {
+            buffer.transferTo(target);
+            assertArrayEquals(BODY, Files.readAllBytes(target));
+        } finally {
+            Files.delete(target);
+        }
+    }
+
+    @Test
+    public void testClose_whileSpilledBodyIsRead_deletesFileAfterLastReader() throws IOException {
+        configuration.memoryThreshold(8);
+
+        BodyBuffer buffer = BodyBuffer.read(new ByteArrayInputStream(BODY), -1, configuration);
+        InputStream first = buffer.newInputStream();
+        InputStream second = buffer.newInputStream();
+        buffer.close();
+
+        assertArrayEquals("still readable after close", BODY, read(first));
+        assertEquals("kept for the other reader", 1, countFiles());
+
+        second.close();
+        assertEquals("deleted after the last reader", 0, countFiles());
+
+        try {
+            buffer.newInputStream();
+            fail("Should not be readable after close");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testWriter_keepsChunksInMemory() throws IOException {
+        BodyBuffer.Writer writer = BodyBuffer.writer(-1, configuration, -1);
+        writer.write(BODY, 0, 5);
+        writer.write(BODY, 5, BODY.length - 5);
+
+        BodyBuffer buffer = writer.finish();
+        assertFalse(buffer.isSpilled());
+        assertArrayEquals(BODY, buffer.toByteArray());
+    }
+
+    @Test
+    public void testWriter_aboveThreshold_spillsToFile() throws IOException {
+        configuration.memoryThreshold(8);
+
+        BodyBuffer.Writer writer = BodyBuffer.writer(-1, configuration, -1);
+        writer.write(BODY, 0, 5);
+        writer.write(BODY, 5, BODY.length - 5);
+
+        try (BodyBuffer buffer = writer.finish()) {
+            assertTrue(buffer.isSpilled());
+            assertArrayEquals(BODY, read(buffer.newInputStream()));
+        }
+        assertEquals("temporary file deleted", 0, countFiles());
+    }
+
+    @Test
+    public void testWriter_largerThanLimit_discardDeletesFile() throws IOException {
+        configuration.memoryThreshold(8);
+
+        BodyBuffer.Writer writer = BodyBuffer.writer(-1, configuration, 15);
+        writer.write(BODY, 0, 10);
+        try {
+            writer.write(BODY, 10, 10);
+            fail("Expected the body to be too large");
+        } catch (BodyLimitException e) {
+            assertEquals(413, e.statusCode());
+        }
+        writer.discard();
+        assertEquals("temporary file deleted", 0, countFiles());
+    }
+
+    private long countFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.count();
+        }
+    }
+
+    private static byte[] read(InputStream in) throws IOException {
+        return IOUtils.toByteArray(in);
+    }
+
+
+    @Test(expected = BodyLimitException.class)
+    public void testRead_contentLengthLargerThanLimit() throws IOException {
+        BodyBuffer.read(new ByteArrayInputStream(BODY), BODY.length, configuration, 10);
+    }
+
+    @Test
+    public void testRead_withoutContentLength_limitedWhileReading() throws IOException {
+        try {
+            BodyBuffer.read(new ByteArrayInputStream(BODY), -1, configuration, 10);
+            fail("Expected the body to be too large");
+        } catch (BodyLimitException e) {
+            assertEquals(413, e.statusCode());
+        }
+    }
+
+}
@@ -0,0 +1,82 @@
+package spark.requestbody;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BodyMemoryBudgetTest {
+
+    private BodyMemoryBudget budget;
+
+    @Before
+    public void setup() {
+        budget = new BodyMemoryBudget();
+    }
+
+    @Test
+    public void testReserve_withoutBudget_reservesNothing() throws BodyLimitException {
+        assertEquals(0, budget.reserve(1000, false));
+        assertEquals(0, budget.reserved());
+    }
+
+    @Test
+    public void testReserve_andRelease() throws BodyLimitException {
+        budget.configure(100, 0);
+
+        long reserved = budget.reserve(60, false);
+        assertEquals(60, budget.reserved());
+
+        budget.release(reserved);
+        assertEquals(0, budget.reserved());
+    }
+
+    @Test
+    public void testReserve_whenUsedUp_failsWith503() throws BodyLimitException {
+        budget.configure(100, 0);
+        budget.reserve(60, false);
+
+        try {
+            budget.reserve(60, true);
+            fail("Expected the budget to be used up");
+        } catch (BodyLimitException e) {
+            assertEquals(503, e.statusCode());
+            assertEquals(60, budget.reserved());
+        }
+    }
+
+    @Test(expected = BodyLimitException.class)
+    public void testReserve_largerThanBudget() throws BodyLimitException {
+        budget.configure(100, 10000);
+        budget.reserve(101, true);
+    }
+
+    @Test
+    public void testReserve_waitsForRelease() throws Exception {
+        budget.configure(100, 10000);
+        long first = budget.reserve(80, false);
+
+        CountDownLatch reserved = new CountDownLatch(1);
+        Thread waiting = new Thread(() -> {
+            try {
+                budget.reserve(50, true);
+                reserved.countDown();
+            } catch (BodyLimitException e) {
+                // the latch is not counted down
+            }
+        });
+        waiting.start();
+
+        assertEquals(1, reserved.getCount());
+        budget.release(first);
+
+        assertTrue(reserved.await(5, TimeUnit.SECONDS));
+        assertEquals(50, budget.reserved());
+    }
+
+}
@@ -0,0 +1,44 @@
+package spark.route;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class AcceptTypeCacheTest {
+
+    private static final List<String> SUPPORTED = Arrays.asList("text/html", "application/json");
+
+    @Test
+    public void testBestMatch_whenAcceptHeaderRepeats_thenItIsCached() {
+        AcceptTypeCache cache = new AcceptTypeCache(4);
+
+        assertEquals("application/json", cache.bestMatch(SUPPORTED, "application/json"));
+        assertEquals("application/json", cache.bestMatch(SUPPORTED, "application/json"));
+
+        assertEquals(1, cache.hits());
+        assertEquals(1, cache.misses());
+    }
+
+    @Test
+    public void testBestMatch_whenFull_thenLeastRecentlyUsedIsEvicted() {
+        AcceptTypeCache cache = new AcceptTypeCache(4);
+
+        cache.bestMatch(SUPPORTED, "text/html");
+        for (int i = 0; i < 10; i++) {
+            cache.bestMatch(SUPPORTED, "text/x-scan-" + i);
+            // The header a regular client sends stays in
+            cache.bestMatch(SUPPORTED, "text/html");
+        }
+
+        assertEquals(10, cache.hits());
+        assertEquals(11, cache.misses());
+
+        // Evicted long ago
+        cache.bestMatch(SUPPORTED, "text/x-scan-0");
+        assertEquals(12, cache.misses());
+    }
+
+}
@@ -116,4 +116,32 @@ public class RouteEntryTest {
                    entry.matches(HttpMethod.get, "/test/this/resource/child/id"));
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testMatches_WildcardWithTrailingSlash() {
+
+        RouteEntry entry = new RouteEntry();
+        entry.httpMethod = HttpMethod.get;
+        entry.path = "/test/*";
+
+        assertTrue("Should return true because a path ending with a slash is covered by the route path wildcard",
+                   entry.matches(HttpMethod.get, "/test/"));
+        assertFalse("Should return false because the wildcard needs a segment or a trailing slash",
+                    entry.matches(HttpMethod.get, "/test"));
+    }
+
+    @Test
+    public void testMatches_WhenPathChanged_thenNewPathIsUsed() {
+
+        RouteEntry entry = new RouteEntry();
+        entry.httpMethod = HttpMethod.get;
+        entry.path = "/test/:id";
+
+        assertTrue(entry.matches(HttpMethod.get, "/test/me"));
+
+        entry.path = "/other/:id";
+
+        assertFalse("Should return false because the route path has been changed",
+                    entry.matches(HttpMethod.get, "/test/me"));
+    }
+
+}
@@ -51,7 +51,7 @@ public class RouteOverviewTest {
 
     @Test
     public void assertThat_allRoutesAreAdded() {
-        assertThat(routes.size(), is(8));
+        assertThat(routes().size(), is(8));
     }
 
     @Test
@@ -123,7 +123,7 @@ public class RouteOverviewTest {
 
     // Helper to improve test readability
     private static String routeName(int index) {
-        return createHtmlForRouteTarget(routes.get(index).target).replace("<b>", ""); // Remove HTML for the test
+        return createHtmlForRouteTarget(routes().get(index).target).replace("<b>", ""); // Remove HTML for the test
     }
 
 }
@@ -6,7 +6,13 @@ import java.util.List;
 import org.junit.Test;
 import org.powermock.reflect.Whitebox;
 
+import spark.routematch.RouteMatch;
+import spark.routematch.RoutePipeline;
+import spark.utils.SparkUtils;
+
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 public class RoutesTest {
@@ -30,7 +36,8 @@ public class RoutesTest {
         simpleRouteMatcher.add(route, acceptType, target);
 
         //then
-        List<RouteEntry> routes = Whitebox.getInternalState(simpleRouteMatcher, "routes");
+        RouteTable table = Whitebox.getInternalState(simpleRouteMatcher, "table");
+        List<RouteEntry> routes = table.routes;
         assertTrue("Should return true because http method is valid and the route should be added to the list",
                    Util.equals(routes, expectedRoutes));
 
@@ -47,8 +54,291 @@ public class RoutesTest {
         simpleRouteMatcher.add(route, acceptType, target);
 
         //then
-        List<RouteEntry> routes = Whitebox.getInternalState(simpleRouteMatcher, "routes");
+        RouteTable table = Whitebox.getInternalState(simpleRouteMatcher, "table");
+        List<RouteEntry> routes = table.routes;
         assertEquals("Should return 0 because test is not a valid http method, so the route is not added to the list",
                      routes.size(), 0);
     }
+
+    @Test
+    public void testFind_whenSeveralRoutesMatch_thenFirstMappedIsChosen() {
+        Routes routes = Routes.create();
+        routes.add("get'/users/*'", "*/*", "wildcard");
+        routes.add("get'/users/:name'", "*/*", "param");
+        routes.add("get'/users/bob'", "*/*", "literal");
+
+        RouteMatch match = routes.find(HttpMethod.get, "/users/bob", "*/*");
+
+        assertEquals("wildcard", match.getTarget());
+        assertEquals("/users/*", match.getMatchUri());
+        assertNull(routes.find(HttpMethod.post, "/users/bob", "*/*"));
+    }
+
+    @Test
+    public void testFindMultiple_whenFiltersMatch_thenReturnedInMappingOrder() {
+        Routes routes = Routes.create();
+        routes.add("before'/admin/:page'", "*/*", "second");
+        routes.add("before'/admin/*'", "*/*", "third");
+        routes.add("before'" + SparkUtils.ALL_PATHS + "'", "*/*", "all");
+        routes.add("before'/other'", "*/*", "other");
+
+        List<RouteMatch> matches = routes.findMultiple(HttpMethod.before, "/admin/users", "*/*");
+
+        assertEquals(3, matches.size());
+        assertEquals("second", matches.get(0).getTarget());
+        assertEquals("third", matches.get(1).getTarget());
+        assertEquals("all", matches.get(2).getTarget());
+    }
+
+    @Test
+    public void testFind_whenRouteRemoved_thenNotFound() {
+        Routes routes = Routes.create();
+        routes.add("get'/hello'", "*/*", "hello");
+        routes.add("get'/hello/:name'", "*/*", "name");
+
+        routes.remove("/hello", "get");
+
+        assertNull(routes.find(HttpMethod.get, "/hello", "*/*"));
+        assertEquals("name", routes.find(HttpMethod.get, "/hello/bob", "*/*").getTarget());
+    }
+
+    @Test
+    public void testFindMultiple_matchesSameRoutesAsRouteEntry() {
+        String[] patterns = {"", "/", "*", "/*", "/hello", "/hello/", "/hello/*", "/hello/:name", "/hello/:name/",
+                "/hello/:name/*", "/:a/:b", "/*/world", "/hello/wo*", "/hello/:name*", "/a/b/c/*", "/a/*/c",
+                "/hello/:id{int}", "/hello/:id{int}/", "/hello/:name{[a-z]+}/*", "/:a{long}/:b"};
+        String[] paths = {"", "/", "//", "/hello", "/hello/", "/hello//", "/hello/world", "/hello/world/",
+                "/hello/world/again", "/hello/wo*", "/hello/wo*/more", "/a/b/c", "/a/b/c/", "/a/b/c/d", "/a/x/c",
+                "/x/world", "/world", "/hello/42", "/hello/42/", "/hello/-7/world", "/12/world", "/hello/2147483648"};
+
+        Routes routes = Routes.create();
+        List<RouteEntry> entries = new ArrayList<>();
+        for (String pattern : patterns) {
+            routes.add("get'" + pattern + "'", "*/*", pattern);
+            RouteEntry entry = new RouteEntry();
+            entry.httpMethod = HttpMethod.get;
+            entry.path = pattern;
+            entries.add(entry);
+        }
+
+        for (String path : paths) {
+            List<Object> expected = new ArrayList<>();
+            for (RouteEntry entry : entries) {
+                if (entry.matches(HttpMethod.get, path)) {
+                    expected.add(entry.path);
+                }
+            }
+            List<Object> actual = new ArrayList<>();
+            for (RouteMatch match : routes.findMultiple(HttpMethod.get, path, null)) {
+                actual.add(match.getTarget());
+            }
+            assertEquals("Matches for " + path, expected, actual);
+        }
+    }
+
+    @Test
+    public void testFind_whenAcceptHeaderRepeats_thenNegotiationIsCached() {
+        Routes routes = Routes.create();
+        routes.add("get'/hello'", "text/html", "html");
+        routes.add("get'/hello'", "application/json", "json");
+
+        String acceptHeader = "application/json;q=0.9,text/html;q=0.8";
+
+        assertEquals("json", routes.find(HttpMethod.get, "/hello", acceptHeader).getTarget());
+        assertEquals("json", routes.find(HttpMethod.get, "/hello", acceptHeader).getTarget());
+        assertEquals("html", routes.find(HttpMethod.get, "/hello", "text/*").getTarget());
+
+        assertEquals(1, routes.acceptTypeCacheHits());
+        assertEquals(2, routes.acceptTypeCacheMisses());
+    }
+
+    @Test
+    public void testFind_whenAcceptTypesAreEquallyGood_thenFirstMappedIsChosen() {
+        Routes routes = Routes.create();
+        routes.add("get'/hello'", "text/html", "html");
+        routes.add("get'/hello'", "application/json", "json");
+
+        assertEquals("html", routes.find(HttpMethod.get, "/hello", "*/*").getTarget());
+    }
+
+    @Test
+    public void testFindPipeline_matchesSameFiltersAsFindMultiple() {
+        String[] patterns = {"/", "*", "/hello", "/hello/", "/hello/*", "/hello/:name", "/hello/:name/",
+                "/:a/:b", "/*/world", "/hello/wo*", "/hello/:name*", "/a/b/c/*", "/a/*/c", "/hello/:id{int}",
+                "/:a{[a-z]+}/*", "/hello/:id{int}/*"};
+        String[] paths = {"/", "/hello", "/hello/", "/hello/world", "/hello/world/", "/hello/world/again",
+                "/hello/wo*", "/a/b/c", "/a/b/c/", "/a/b/c/d", "/a/x/c", "/x/world", "/hello/42", "/hello/42/x",
+                "/42/world"};
+
+        for (String routePattern : patterns) {
+            Routes routes = Routes.create();
+            routes.add("get'" + routePattern + "'", "*/*", routePattern);
+            for (String pattern : patterns) {
+                routes.add("before'" + pattern + "'", "*/*", pattern);
+                routes.add("after'" + pattern + "'", "*/*", pattern);
+            }
+
+            for (String path : paths) {
+                for (int i = 0; i < 2; i++) {
+                    RoutePipeline pipeline = routes.findPipeline(HttpMethod.get, path, "*/*");
+                    String description = "Filters for route " + routePattern + " and path " + path;
+
+                    assertEquals(description,
+                                 targets(routes.findMultiple(HttpMethod.before, path, "*/*")),
+                                 targets(pipeline.getBeforeFilters()));
+                    assertEquals(description,
+                                 targets(routes.findMultiple(HttpMethod.after, path, "*/*")),
+                                 targets(pipeline.getAfterFilters()));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testFindPipeline_whenNoFilters_thenFilterListsAreEmpty() {
+        Routes routes = Routes.create();
+        routes.add("get'/hello/:name'", "*/*", "hello");
+
+        RoutePipeline pipeline = routes.findPipeline(HttpMethod.get, "/hello/bob", "*/*");
+
+        assertEquals("hello", pipeline.getRoute().getTarget());
+        assertTrue(pipeline.getBeforeFilters().isEmpty());
+        assertTrue(pipeline.getAfterFilters().isEmpty());
+
+        routes.add("before'/hello/*'", "*/*", "filter");
+
+        pipeline = routes.findPipeline(HttpMethod.get, "/hello/bob", "*/*");
+        assertEquals("Should see the filter mapped after the pipeline was first computed",
+                     1, pipeline.getBeforeFilters().size());
+    }
+
+    private static List<Object> targets(List<RouteMatch> matches) {
+        List<Object> targets = new ArrayList<>();
+        for (RouteMatch match : matches) {
+            targets.add(match.getTarget());
+        }
+        return targets;
+    }
+
+    @Test
+    public void testBatch_whenChangesMade_thenPublishedTogether() {
+        Routes routes = Routes.create();
+        routes.add("get'/tenant/a'", "*/*", "old");
+
+        routes.batch(r -> {
+            r.remove("/tenant/a", "get");
+            r.add("get'/tenant/a'", "*/*", "new");
+            r.add("get'/tenant/b'", "*/*", "b");
+
+            assertEquals("Should not be published before the batch is done",
+                         "old", routes.find(HttpMethod.get, "/tenant/a", "*/*").getTarget());
+        });
+
+        assertEquals("new", routes.find(HttpMethod.get, "/tenant/a", "*/*").getTarget());
+        assertEquals("b", routes.find(HttpMethod.get, "/tenant/b", "*/*").getTarget());
+    }
+
+    @Test
+    public void testBatch_whenChangesThrow_thenNothingIsPublished() {
+        Routes routes = Routes.create();
+        routes.add("get'/tenant/a'", "*/*", "old");
+
+        try {
+            routes.batch(r -> {
+                r.clear();
+                r.add("get'/tenant/b'", "*/*", "b");
+                throw new IllegalStateException("invalid configuration");
+            });
+        } catch (IllegalStateException expected) {
+            // expected
+        }
+
+        assertEquals("old", routes.find(HttpMethod.get, "/tenant/a", "*/*").getTarget());
+        assertNull(routes.find(HttpMethod.get, "/tenant/b", "*/*"));
+    }
+
+    @Test
+    public void testAdd_whenRouteAdded_thenPreviousTableIsUnchanged() {
+        Routes routes = Routes.create();
+        routes.add("get'/users/:name'", "*/*", "name");
+        RouteTable before = Whitebox.getInternalState(routes, "table");
+
+        routes.add("get'/users/:name/posts'", "*/*", "posts");
+
+        assertFalse(before.index.find(HttpMethod.get, "/users/bob/posts").iterator().hasNext());
+        assertEquals(1, before.routes.size());
+        assertEquals("posts", routes.find(HttpMethod.get, "/users/bob/posts", "*/*").getTarget());
+        assertEquals("name", routes.find(HttpMethod.get, "/users/bob", "*/*").getTarget());
+    }
+
+    @Test
+    public void testFind_whenParamIsConstrained_thenOnlyMatchingValuesMatch() {
+        Routes routes = Routes.create();
+        routes.add("get'/items/:id{int}'", "*/*", "int");
+        routes.add("get'/items/:id{uuid}'", "*/*", "uuid");
+        routes.add("get'/items/search'", "*/*", "search");
+        routes.add("get'/items/:slug{[a-z0-9-]+}'", "*/*", "slug");
+
+        assertEquals("int", routes.find(HttpMethod.get, "/items/42", "*/*").getTarget());
+        assertEquals("uuid", routes.find(HttpMethod.get, "/items/123e4567-e89b-12d3-a456-426614174000", "*/*")
+                .getTarget());
+        assertEquals("search", routes.find(HttpMethod.get, "/items/search", "*/*").getTarget());
+        assertEquals("slug", routes.find(HttpMethod.get, "/items/red-shoes", "*/*").getTarget());
+        assertEquals("slug", routes.find(HttpMethod.get, "/items/2147483648", "*/*").getTarget());
+        assertNull(routes.find(HttpMethod.get, "/items/Red_Shoes", "*/*"));
+    }
+
+    @Test
+    public void testRemove_whenParamIsConstrained_thenRouteIsRemoved() {
+        Routes routes = Routes.create();
+        routes.add("get'/items/:id{int}'", "*/*", "int");
+
+        assertTrue(routes.remove("/items/:id{int}", "get"));
+        assertNull(routes.find(HttpMethod.get, "/items/42", "*/*"));
+    }
+
+    @Test
+    public void testAdd_whenTyped_thenSameAsParsedRoute() {
+        Routes routes = Routes.create();
+        routes.add(HttpMethod.get, "/users/:name", "*/*", "name");
+        routes.add(HttpMethod.unsupported, "/users/:name", "*/*", "unsupported");
+
+        RouteTable table = Whitebox.getInternalState(routes, "table");
+        assertEquals(1, table.routes.size());
+        assertEquals("name", routes.find(HttpMethod.get, "/users/bob", "*/*").getTarget());
+    }
+
+    @Test
+    public void testAdd_whenTypedPathHasSpaces_thenPathIsTrimmed() {
+        Routes routes = Routes.create();
+        routes.add(HttpMethod.get, " /users/:name ", "*/*", "name");
+
+        assertEquals("name", routes.find(HttpMethod.get, "/users/bob", "*/*").getTarget());
+    }
+
+    @Test
+    public void testFindPipeline_whenHeadIsNotMapped_thenGetRouteIsUsed() {
+        Routes routes = Routes.create();
+        routes.add("get'/health'", "*/*", "get");
+
+        RoutePipeline pipeline = routes.findPipeline(HttpMethod.head, "/health", "*/*");
+
+        assertEquals("get", pipeline.getRoute().getTarget());
+        assertNull(pipeline.getAllow());
+    }
+
+    @Test
+    public void testFindPipeline_whenMethodIsNotMapped_thenAllowedMethodsAreFound() {
+        Routes routes = Routes.create();
+        routes.add("post'/users/:name'", "*/*", "post");
+        routes.add("get'/users/*'", "*/*", "get");
+        routes.add("delete'/users/bob/posts'", "*/*", "delete");
+
+        RoutePipeline pipeline = routes.findPipeline(HttpMethod.put, "/users/bob", "*/*");
+
+        assertNull(pipeline.getRoute());
+        assertEquals("GET, POST, HEAD, OPTIONS", pipeline.getAllow());
+        assertNull(routes.findPipeline(HttpMethod.put, "/other", "*/*").getAllow());
+        assertNull(routes.findPipeline(HttpMethod.post, "/users/bob", "*/*").getAllow());
+    }
 }
@@ -0,0 +1,80 @@
+package spark.serialization;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SerializerRegistryTest {
+
+    private final SerializerRegistry registry = new SerializerRegistry();
+
+    @Test
+    public void testBuiltInTypes() throws IOException {
+        Assert.assertEquals("bytes", write("bytes".getBytes(StandardCharsets.UTF_8)));
+        Assert.assertEquals("héllo", write("héllo"));
+        Assert.assertEquals("stream", write(new ByteArrayInputStream("stream".getBytes(StandardCharsets.UTF_8))));
+        Assert.assertEquals("42", write(42));
+    }
+
+    @Test
+    public void testByteBufferIsWrittenFromItsPosition() throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap("skip:buffer".getBytes(StandardCharsets.UTF_8));
+        buffer.position(5);
+        Assert.assertEquals("buffer", write(buffer));
+        Assert.assertEquals(5, buffer.position());
+    }
+
+    @Test
+    public void testSerializerRegisteredForInterface() throws IOException {
+        registry.register(CharSequence.class, (out, chars) -> out.write(("chars:" + chars).getBytes(StandardCharsets.UTF_8)));
+
+        Assert.assertEquals("chars:builder", write(new StringBuilder("builder")));
+        Assert.assertEquals("héllo", write("héllo"));
+    }
+
+    @Test
+    public void testClosestTypeWins() throws IOException {
+        registry.register(Animal.class, (out, animal) -> out.write("animal".getBytes(StandardCharsets.UTF_8)));
+        Assert.assertEquals("animal", write(new Dog()));
+
+        registry.register(Named.class, (out, named) -> out.write(named.name().getBytes(StandardCharsets.UTF_8)));
+        Assert.assertEquals("rex", write(new Dog()));
+        Assert.assertEquals("animal", write(new Animal()));
+    }
+
+    @Test
+    public void testRegisteringReplacesSerializer() throws IOException {
+        registry.register(Integer.class, (out, number) -> out.write(("#" + number).getBytes(StandardCharsets.UTF_8)));
+        Assert.assertEquals("#42", write(42));
+
+        registry.register(Object.class, (out, element) -> out.write("object".getBytes(StandardCharsets.UTF_8)));
+        Assert.assertEquals("#42", write(42));
+        Assert.assertEquals("object", write(42L));
+    }
+
+    private String write(Object element) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        registry.process(out, element);
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private interface Named {
+        String name();
+    }
+
+    private static class Animal {
+    }
+
+    private static class Dog extends Animal implements Named {
+        @Override
+        public String name() {
+            return "rex";
+        }
+    }
+
+}
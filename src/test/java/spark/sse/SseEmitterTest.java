@@ -0,0 +1,35 @@
+package spark.sse;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class SseEmitterTest {
+
+    @Test
+    public void testFrame_withDataOnly() {
+        assertEquals("data:hello\n\n", frame(null, null, "hello"));
+    }
+
+    @Test
+    public void testFrame_withIdAndEvent() {
+        assertEquals("id:7\nevent:price\ndata:42\n\n", frame("7", "price", "42"));
+    }
+
+    @Test
+    public void testFrame_splitsDataLines() {
+        assertEquals("data:a\ndata:b\ndata:c\ndata:\n\n", frame(null, null, "a\nb\r\nc\r"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testFrame_rejectsLineBreakInEvent() {
+        frame(null, "bad\nevent", "data");
+    }
+
+    private static String frame(String id, String event, String data) {
+        return new String(SseEmitter.frame(id, event, data), StandardCharsets.UTF_8);
+    }
+
+}
@@ -2,6 +2,7 @@ package spark.utils;
 
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
@@ -53,4 +54,22 @@ public class SparkUtilsTest {
         assertFalse("Should return true because parameter is not a splat (*)", SparkUtils.isSplat("!"));
 
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testSegmentWalk_whenPathHasEmptySegments_thenSameAsConvertRouteToList() throws Exception {
+
+        String path = "//api/person//:id/";
+        List<String> segments = new ArrayList<>();
+
+        for (int start = SparkUtils.nextSegmentStart(path, 0);
+             start != -1;
+             start = SparkUtils.nextSegmentStart(path, SparkUtils.segmentEnd(path, start))) {
+            segments.add(path.substring(start, SparkUtils.segmentEnd(path, start)));
+        }
+
+        assertThat("Should walk the same segments as convertRouteToList splits the path into",
+                segments,
+                is(SparkUtils.convertRouteToList(path)));
+        assertEquals("Should return -1 because the path has no segments", -1, SparkUtils.nextSegmentStart("//", 0));
+    }
+}